@@ -0,0 +1,317 @@
+package encoder;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.videoio.VideoCapture;
+
+public class EncoderBenchmark {
+
+	// measures the stages of the encoder the way JMH does: warmup iterations, then timed iterations,
+	// reporting throughput and the bytes allocated per operation by the benchmark thread, e.g.
+	// java encoder.EncoderBenchmark --warmup 3 --iterations 5 --time 1000 --video resources/small.mp4 --resources resources compress
+
+	private static final int[][] resolutions = { { 426, 240 }, { 854, 480 }, { 1280, 720 }, { 1920, 1080 } };
+	private static final int numberOfFramesPerEncode = 10;
+
+	private int warmupIterations = 3;
+	private int measurementIterations = 5;
+	private long iterationTimeInMilliSeconds = 1000;
+	private File video = new File("resources/small.mp4");
+	private File resources = new File("resources"); // the images and every frame of the GIFs in it are packed by the LZW benchmarks
+	private List<String> filters = new ArrayList<String>();
+
+	private static volatile long sink; // keeps the results alive, like a JMH Blackhole
+	private com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	public static void main(String[] args) throws IOException {
+		EncoderBenchmark benchmark = new EncoderBenchmark();
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+			case "--warmup":
+				benchmark.warmupIterations = Integer.parseInt(args[++i]);
+				break;
+			case "--iterations":
+				benchmark.measurementIterations = Integer.parseInt(args[++i]);
+				break;
+			case "--time":
+				benchmark.iterationTimeInMilliSeconds = Long.parseLong(args[++i]);
+				break;
+			case "--video":
+				benchmark.video = new File(args[++i]);
+				break;
+			case "--resources":
+				benchmark.resources = new File(args[++i]);
+				break;
+			default:
+				benchmark.filters.add(args[i]); // only the benchmarks whose name contains one of them
+			}
+		}
+		benchmark.run();
+	}
+
+	private void run() throws IOException {
+		Map<String, Frame> inputs = new LinkedHashMap<String, Frame>();
+		for (int[] resolution : resolutions) {
+			inputs.put(resolution[1] + "p noisy", createNoisyFrame(resolution[0], resolution[1]));
+			inputs.put(resolution[1] + "p flat", createFlatFrame(resolution[0], resolution[1]));
+		}
+		Frame videoFrame = readVideoFrame();
+		if (videoFrame != null) {
+			inputs.put(videoFrame.height + "p video", videoFrame);
+		}
+
+		System.out.printf("%-40s %-12s %5s %14s %12s %14s%n", "Benchmark", "(input)", "Cnt", "Score (ops/s)", "Error", "Alloc (B/op)");
+		for (Map.Entry<String, Frame> input : inputs.entrySet()) {
+			Frame frame = input.getValue();
+			String name = input.getKey();
+
+			// ColorTable construction
+			measure("quantize.medianCut", name, () -> sink += new MedianCutQuantizer().quantize(frame.pixels, frame.width, frame.height).getImageIndices().length);
+			for (QuantizationTier tier : QuantizationTier.values()) {
+				Quantizer quantizer = tier.createQuantizer();
+				measure("quantize." + tier.name().toLowerCase(), name, () -> sink += quantizer.quantize(frame.pixels, frame.width, frame.height).getImageIndices().length);
+			}
+
+			// the per-pixel mapping behind getImageIndices, once the palette is known
+			ColorTable colorTable = QuantizationTier.BALANCED.createQuantizer().quantize(frame.pixels, frame.width, frame.height);
+			colorTable.remap(frame.pixels, frame.width, frame.height); // the inverse color map fills its cells once per palette, not per frame
+			measure("colorTable.remap", name, () -> sink += colorTable.remap(frame.pixels, frame.width, frame.height).getImageIndices().length);
+
+			int[] indices = colorTable.getImageIndices();
+			measure("compressImageData", name, () -> sink += GIFStreamEncoder.compressImageData(indices).length);
+
+			measure("lzwImageData.writeGetData", name, () -> {
+				LZWImageData data = new LZWImageData(indices.length);
+				for (int i = 0; i < indices.length; i++) {
+					data.write(indices[i] | 0x100, 12);
+				}
+				sink += data.getData().length;
+			});
+			measure("lzwImageData.baseline", name, () -> {
+				// the same codes through the old packer, 12 bits per pixel and a size record per 255 bytes fit in twice the pixels
+				BaselineLZWImageData data = new BaselineLZWImageData(indices.length*2 + 3);
+				for (int i = 0; i < indices.length; i++) {
+					data.write(indices[i] | 0x100, 12);
+				}
+				sink += data.getData().length;
+			});
+
+			measure("encode", name, () -> encode(frame, false));
+			measure("encode.paletteReuse", name, () -> encode(frame, true));
+			measure("gifEncoder.encode", name, () -> {
+				// the whole in-memory encoder, from the frames to the bytes of the file
+				RasterFrame[] frames = new RasterFrame[numberOfFramesPerEncode];
+				for (int i = 0; i < frames.length; i++) {
+					frames[i] = new ByteArrayFrame(frame.pixels, frame.width, frame.height);
+				}
+				sink += new GIFEncoder(frames).encode((short) 100).length;
+			});
+		}
+
+		// the old and the new packer over the same codes of real frames, one operation packs all of them
+		List<int[]> resourceIndices = new ArrayList<int[]>();
+		for (Frame frame : readResourceFrames()) {
+			resourceIndices.add(QuantizationTier.BALANCED.createQuantizer().quantize(frame.pixels, frame.width, frame.height).getImageIndices());
+		}
+		if (!resourceIndices.isEmpty()) {
+			String name = resourceIndices.size() + " frames";
+			measure("lzwImageData.writeGetData", name, () -> {
+				for (int[] indices : resourceIndices) {
+					LZWImageData data = new LZWImageData(indices.length);
+					for (int i = 0; i < indices.length; i++) {
+						data.write(indices[i] | 0x100, 12);
+					}
+					sink += data.getData().length;
+				}
+			});
+			measure("lzwImageData.baseline", name, () -> {
+				for (int[] indices : resourceIndices) {
+					BaselineLZWImageData data = new BaselineLZWImageData(indices.length*2 + 3);
+					for (int i = 0; i < indices.length; i++) {
+						data.write(indices[i] | 0x100, 12);
+					}
+					sink += data.getData().length;
+				}
+			});
+		}
+	}
+
+	private void encode(Frame frame, boolean paletteReuse) {
+		// the same frame over and over, so with palette reuse only the first one is quantized
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		GIFStreamEncoder encoder = new GIFStreamEncoder(output);
+		encoder.setQuantizationTier(QuantizationTier.BALANCED);
+		encoder.setPaletteReuse(paletteReuse, 0.1);
+		try {
+			for (int i = 0; i < numberOfFramesPerEncode; i++) {
+				encoder.addFrame(frame.pixels, frame.width, frame.height, (short) 100);
+			}
+			encoder.finish();
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		sink += output.size();
+	}
+
+	private void measure(String benchmark, String input, Runnable operation) {
+		String name = benchmark + " " + input;
+		if (!filters.isEmpty() && filters.stream().noneMatch(name::contains)) {
+			return;
+		}
+		for (int i = 0; i < warmupIterations; i++) {
+			runIteration(operation);
+		}
+		double[] scores = new double[measurementIterations];
+		long totalOperations = 0;
+		long totalAllocatedBytes = 0;
+		for (int i = 0; i < measurementIterations; i++) {
+			long allocatedBytes = threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+			long[] result = runIteration(operation);
+			totalAllocatedBytes += threadBean.getThreadAllocatedBytes(Thread.currentThread().getId()) - allocatedBytes;
+			totalOperations += result[0];
+			scores[i] = result[0] * 1e9 / result[1];
+		}
+
+		double mean = 0;
+		for (double score : scores) {
+			mean += score;
+		}
+		mean /= scores.length;
+		double variance = 0;
+		for (double score : scores) {
+			variance += (score - mean) * (score - mean);
+		}
+		double error = scores.length > 1 ? 2 * Math.sqrt(variance / (scores.length - 1)) : Double.NaN; // about 95%
+		System.out.printf("%-40s %-12s %5d %14.3f %12.3f %14d%n", benchmark, input, scores.length, mean, error, totalAllocatedBytes / Math.max(1, totalOperations));
+	}
+
+	private long[] runIteration(Runnable operation) {
+		// runs the operation until the iteration time is over, returns the number of operations and the nanoseconds taken
+		long startTime = System.nanoTime();
+		long endTime = startTime + iterationTimeInMilliSeconds * 1000000;
+		long operations = 0;
+		long now;
+		do {
+			operation.run();
+			operations++;
+			now = System.nanoTime();
+		} while (now < endTime);
+		return new long[] { operations, now - startTime };
+	}
+
+	private Frame createNoisyFrame(int width, int height) {
+		byte[] pixels = new byte[width * height * 3];
+		new Random(42).nextBytes(pixels);
+		return new Frame(pixels, width, height);
+	}
+
+	private Frame createFlatFrame(int width, int height) {
+		// a few large areas of one color each, like a cartoon or a slide
+		byte[] pixels = new byte[width * height * 3];
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				int area = (x * 4 / width) + (y * 2 / height) * 4;
+				int position = (y * width + x) * 3;
+				pixels[position] = (byte) (area * 32);
+				pixels[position + 1] = (byte) (255 - area * 32);
+				pixels[position + 2] = (byte) (area * 16 + 64);
+			}
+		}
+		return new Frame(pixels, width, height);
+	}
+
+	private List<Frame> readResourceFrames() throws IOException {
+		// every frame of every image ImageIO can read, as stored, so the frames of a GIF may be smaller than its screen
+		List<Frame> frames = new ArrayList<Frame>();
+		File[] files = resources.listFiles();
+		if (files == null) {
+			System.err.println("Cannot list " + resources + ", skipping the resource frames");
+			return frames;
+		}
+		for (File file : files) {
+			try (ImageInputStream input = ImageIO.createImageInputStream(file)) {
+				if (input == null || !ImageIO.getImageReaders(input).hasNext()) {
+					continue; // e.g. the video
+				}
+				ImageReader reader = ImageIO.getImageReaders(input).next();
+				reader.setInput(input);
+				for (int i = 0; i < reader.getNumImages(true); i++) {
+					frames.add(toFrame(reader.read(i)));
+				}
+				reader.dispose();
+			}
+		}
+		return frames;
+	}
+
+	private Frame toFrame(BufferedImage image) {
+		int width = image.getWidth();
+		int height = image.getHeight();
+		byte[] pixels = new byte[width * height * 3];
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				int rgb = image.getRGB(x, y);
+				int position = (y * width + x) * 3;
+				pixels[position] = (byte) rgb;
+				pixels[position + 1] = (byte) (rgb >> 8);
+				pixels[position + 2] = (byte) (rgb >> 16);
+			}
+		}
+		return new Frame(pixels, width, height);
+	}
+
+	private Frame readVideoFrame() {
+		// a decoded frame from the middle of the sample video, if OpenCV is available
+		try {
+			System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+		} catch (UnsatisfiedLinkError e) {
+			System.err.println("OpenCV is not available, skipping the video input: " + e.getMessage());
+			return null;
+		}
+		VideoCapture capture = new VideoCapture(video.getAbsolutePath());
+		Mat frame = new Mat();
+		try {
+			for (int i = 0; i < 30 && capture.read(frame); i++);
+			if (frame.empty()) {
+				System.err.println("Cannot read " + video + ", skipping the video input");
+				return null;
+			}
+			if (frame.rows() > 1080) {
+				Imgproc.resize(frame, frame, new Size(frame.cols() * 1080 / frame.rows(), 1080), 0, 0, Imgproc.INTER_AREA);
+			}
+			return new Frame(new MatFrame(frame).getBGRPixels(), frame.cols(), frame.rows());
+		} finally {
+			frame.release();
+			capture.release();
+		}
+	}
+
+	private static class Frame {
+		final byte[] pixels; // packed BGR
+		final int width;
+		final int height;
+
+		Frame(byte[] pixels, int width, int height) {
+			this.pixels = pixels;
+			this.width = width;
+			this.height = height;
+		}
+	}
+}
@@ -0,0 +1,137 @@
+package encoder;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOMetadataNode;
+
+public class RoundTripCheck {
+
+	// encodes synthetic clips, decodes them again with the GIF reader of the JDK, and compares every frame with its source,
+	// exits with 1 if a frame comes back worse than minimumPSNR, e.g.
+	// java encoder.RoundTripCheck
+
+	private static final double minimumPSNR = 30; // in dB, a wrong color anywhere in a frame falls far below
+	private static final int width = 160;
+	private static final int height = 90;
+	private static final int numberOfFrames = 12;
+
+	private boolean failed = false;
+
+	public static void main(String[] args) throws IOException {
+		RoundTripCheck check = new RoundTripCheck();
+		check.run();
+		System.exit(check.failed ? 1 : 0);
+	}
+
+	private void run() throws IOException {
+		Random random = new Random(7);
+		for (int clip = 0; clip < 20; clip++) {
+			// a box of one color moving over a flat or graded background, so the changed regions hold only a few colors,
+			// with other colors halfway through, like a scene change
+			byte[][] backgrounds = new byte[2][3];
+			byte[][] boxes = new byte[2][3];
+			for (int scene = 0; scene < 2; scene++) {
+				random.nextBytes(backgrounds[scene]);
+				random.nextBytes(boxes[scene]);
+			}
+			List<byte[]> frames = new ArrayList<byte[]>();
+			for (int i = 0; i < numberOfFrames; i++) {
+				int scene = i*2 / numberOfFrames;
+				frames.add(createBoxFrame(backgrounds[scene], boxes[scene], clip % 2 == 0, 10 + i*6));
+			}
+			for (boolean deltaEncoding : new boolean[] { false, true }) {
+				check("medianCut", "box " + clip, frames, new MedianCutQuantizer(), deltaEncoding, false);
+				for (QuantizationTier tier : QuantizationTier.values()) {
+					check(tier.name().toLowerCase(), "box " + clip, frames, tier.createQuantizer(), deltaEncoding, false);
+				}
+				check("reuse", "box " + clip, frames, QuantizationTier.BALANCED.createQuantizer(), deltaEncoding, true);
+			}
+		}
+		System.out.println(failed ? "FAILED" : "OK");
+	}
+
+	private void check(String quantizerName, String clipName, List<byte[]> frames, Quantizer quantizer, boolean deltaEncoding, boolean paletteReuse) throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		GIFStreamEncoder encoder = new GIFStreamEncoder(output);
+		encoder.setQuantizer(quantizer);
+		encoder.setDeltaEncoding(deltaEncoding, 4);
+		encoder.setPaletteReuse(paletteReuse, 0.1);
+		for (byte[] frame : frames) {
+			encoder.addFrame(frame, width, height, (short) 100);
+		}
+		encoder.finish();
+
+		List<byte[]> decodedFrames = decode(output.toByteArray());
+		double lowestPSNR = Double.POSITIVE_INFINITY;
+		for (int i = 0; i < frames.size(); i++) {
+			lowestPSNR = Math.min(lowestPSNR, i < decodedFrames.size() ? computePSNR(frames.get(i), decodedFrames.get(i)) : 0);
+		}
+		if (lowestPSNR < minimumPSNR) {
+			System.out.printf("%-10s %-8s delta %-5b lowest PSNR %.1f dB%n", quantizerName, clipName, deltaEncoding, lowestPSNR);
+			failed = true;
+		}
+	}
+
+	private byte[] createBoxFrame(byte[] background, byte[] box, boolean graded, int boxLeft) {
+		byte[] pixels = new byte[width * height * 3];
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				boolean inBox = x >= boxLeft && x < boxLeft + 30 && y >= 20 && y < 50;
+				int position = (y * width + x) * 3;
+				for (int channel = 0; channel < 3; channel++) {
+					pixels[position + channel] = inBox ? box[channel] : background[channel];
+				}
+				if (graded && !inBox) {
+					pixels[position] = (byte) (x * 255 / width);
+				}
+			}
+		}
+		return pixels;
+	}
+
+	private List<byte[]> decode(byte[] gif) throws IOException {
+		// the frames as shown, each drawn over the previous ones, in packed BGR
+		ImageReader reader = ImageIO.getImageReadersByFormatName("gif").next();
+		reader.setInput(ImageIO.createImageInputStream(new ByteArrayInputStream(gif)));
+		BufferedImage screen = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		List<byte[]> frames = new ArrayList<byte[]>();
+		for (int i = 0; i < reader.getNumImages(true); i++) {
+			IIOMetadataNode descriptor = (IIOMetadataNode) ((IIOMetadataNode) reader.getImageMetadata(i).getAsTree("javax_imageio_gif_image_1.0"))
+					.getElementsByTagName("ImageDescriptor").item(0);
+			int left = Integer.parseInt(descriptor.getAttribute("imageLeftPosition"));
+			int top = Integer.parseInt(descriptor.getAttribute("imageTopPosition"));
+			screen.getGraphics().drawImage(reader.read(i), left, top, null);
+			byte[] pixels = new byte[width * height * 3];
+			for (int y = 0; y < height; y++) {
+				for (int x = 0; x < width; x++) {
+					int rgb = screen.getRGB(x, y);
+					int position = (y * width + x) * 3;
+					pixels[position] = (byte) rgb;
+					pixels[position + 1] = (byte) (rgb >> 8);
+					pixels[position + 2] = (byte) (rgb >> 16);
+				}
+			}
+			frames.add(pixels);
+		}
+		reader.dispose();
+		return frames;
+	}
+
+	private double computePSNR(byte[] original, byte[] decoded) {
+		double squaredError = 0;
+		for (int i = 0; i < original.length; i++) {
+			double difference = (original[i] & 0xFF) - (decoded[i] & 0xFF);
+			squaredError += difference * difference;
+		}
+		double meanSquaredError = squaredError / original.length;
+		return meanSquaredError == 0 ? Double.POSITIVE_INFINITY : 10 * Math.log10(255 * 255 / meanSquaredError);
+	}
+}
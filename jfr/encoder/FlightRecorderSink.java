@@ -0,0 +1,21 @@
+package encoder;
+
+class FlightRecorderSink implements EncoderEvents.Sink {
+	
+	// loaded by EncoderEvents only when jdk.jfr exists
+	
+	@Override
+	public boolean isEnabled() {
+		return FrameEncodedEvent.isRecorded() || StageEvent.isRecorded();
+	}
+	
+	@Override
+	public void frameEncoded(FrameMetrics metrics) {
+		FrameEncodedEvent.emit(metrics);
+	}
+	
+	@Override
+	public void stageCompleted(String stage, int frameIndex, long nanos) {
+		StageEvent.emit(stage, frameIndex, nanos);
+	}
+}
@@ -0,0 +1,69 @@
+package encoder;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+@Name("encoder.FrameEncoded")
+@Label("GIF Frame Encoded")
+@Category("MemeCreator")
+class FrameEncodedEvent extends Event {
+	
+	private static final EventType type = EventType.getEventType(FrameEncodedEvent.class);
+	
+	@Label("Frame Index")
+	int frameIndex;
+	@Label("Width")
+	int width;
+	@Label("Height")
+	int height;
+	@Label("Number of Colors")
+	int numberOfColors;
+	@Label("Compressed Size")
+	@DataAmount
+	int compressedBytes;
+	@Label("Compression Ratio")
+	double compressionRatio;
+	@Label("Delta")
+	@Timespan
+	long deltaNanos;
+	@Label("Quantize")
+	@Timespan
+	long quantizeNanos;
+	@Label("Compress")
+	@Timespan
+	long compressNanos;
+	@Label("Write")
+	@Timespan
+	long writeNanos;
+	@Label("Allocated")
+	@DataAmount
+	long allocatedBytes;
+	
+	static boolean isRecorded() {
+		return type.isEnabled();
+	}
+	
+	static void emit(FrameMetrics metrics) {
+		FrameEncodedEvent event = new FrameEncodedEvent();
+		if (!event.shouldCommit()) {
+			return;
+		}
+		event.frameIndex = metrics.frameIndex;
+		event.width = metrics.width;
+		event.height = metrics.height;
+		event.numberOfColors = metrics.numberOfColors;
+		event.compressedBytes = metrics.compressedBytes;
+		event.compressionRatio = metrics.getCompressionRatio();
+		event.deltaNanos = metrics.deltaNanos;
+		event.quantizeNanos = metrics.quantizeNanos;
+		event.compressNanos = metrics.compressNanos;
+		event.writeNanos = metrics.writeNanos;
+		event.allocatedBytes = metrics.allocatedBytes;
+		event.commit();
+	}
+}
@@ -0,0 +1,41 @@
+package encoder;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+@Name("encoder.Stage")
+@Label("GIF Export Stage")
+@Category("MemeCreator")
+class StageEvent extends Event {
+	
+	// one stage of one frame, e.g. decode, resize or LZW, committed on the thread that ran it
+	
+	private static final EventType type = EventType.getEventType(StageEvent.class);
+	
+	@Label("Stage")
+	String stage;
+	@Label("Frame Index")
+	int frameIndex;
+	@Label("Time Taken")
+	@Timespan
+	long nanos;
+	
+	static boolean isRecorded() {
+		return type.isEnabled();
+	}
+	
+	static void emit(String stage, int frameIndex, long nanos) {
+		StageEvent event = new StageEvent();
+		if (!event.shouldCommit()) {
+			return;
+		}
+		event.stage = stage;
+		event.frameIndex = frameIndex;
+		event.nanos = nanos;
+		event.commit();
+	}
+}
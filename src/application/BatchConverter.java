@@ -0,0 +1,210 @@
+package application;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.opencv.core.Core;
+import org.opencv.videoio.VideoCapture;
+import org.opencv.videoio.Videoio;
+
+import encoder.QuantizationTier;
+
+public class BatchConverter {
+
+	// converts many videos without a display, e.g.
+	// java application.BatchConverter --start 1.5 --end 4 --scale 0.5 --fps 10 --caption "so meme" --threads 8 --output gifs a.mp4 b.mp4
+
+	private double startInSeconds = 0;
+	private double endInSeconds = -1; // -1 for the end of the video
+	private double scale = 0.25;
+	private double framePerSecond = 0; // 0 for half the video frame rate
+	private double maximumFramePerSecond = 0; // for fast motion, 0 to sample at framePerSecond only
+	private long targetSizeInKiloBytes = 0; // 0 to keep the scale and frame rate as given
+	private QuantizationTier quantizationTier = QuantizationTier.BALANCED;
+	private String caption;
+	private boolean verbose = false; // print the time taken by every stage
+	private int numberOfThreads = Runtime.getRuntime().availableProcessors();
+	private File outputDirectory = new File(".");
+	private List<File> inputFiles = new ArrayList<File>();
+
+	public static void main(String[] args) {
+		System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+		BatchConverter converter = new BatchConverter();
+		try {
+			converter.parseArguments(args);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.println("Usage: BatchConverter [--start seconds] [--end seconds] [--scale factor] [--fps rate] [--max-fps rate] [--target-size kilobytes] [--tier fast|balanced|fine] [--caption text] [--threads n] [--output directory] [--verbose] video...");
+			System.exit(2);
+		}
+		System.exit(converter.run() ? 0 : 1);
+	}
+
+	private void parseArguments(String[] args) {
+		for (int i = 0; i < args.length; i++) {
+			String argument = args[i];
+			if (argument.equals("--verbose")) {
+				verbose = true;
+			} else if (argument.startsWith("--")) {
+				if (i + 1 == args.length) {
+					throw new IllegalArgumentException("Missing value for " + argument);
+				}
+				String value = args[++i];
+				try {
+					switch (argument) {
+					case "--start":
+						startInSeconds = Double.parseDouble(value);
+						break;
+					case "--end":
+						endInSeconds = Double.parseDouble(value);
+						break;
+					case "--scale":
+						scale = Double.parseDouble(value);
+						break;
+					case "--fps":
+						framePerSecond = Double.parseDouble(value);
+						break;
+					case "--max-fps":
+						maximumFramePerSecond = Double.parseDouble(value);
+						break;
+					case "--target-size":
+						targetSizeInKiloBytes = Long.parseLong(value);
+						break;
+					case "--tier":
+						quantizationTier = parseTier(value);
+						break;
+					case "--caption":
+						caption = value;
+						break;
+					case "--threads":
+						numberOfThreads = Integer.parseInt(value);
+						break;
+					case "--output":
+						outputDirectory = new File(value);
+						break;
+					default:
+						throw new IllegalArgumentException("Unknown option " + argument);
+					}
+				} catch (NumberFormatException e) {
+					throw new IllegalArgumentException("Invalid value for " + argument + ": " + value);
+				}
+			} else {
+				inputFiles.add(new File(argument));
+			}
+		}
+		if (inputFiles.isEmpty()) {
+			throw new IllegalArgumentException("No input videos");
+		}
+		if (numberOfThreads < 1) {
+			throw new IllegalArgumentException("--threads must be positive");
+		}
+		if (scale <= 0 || scale > 1) {
+			throw new IllegalArgumentException("--scale must be in (0, 1]");
+		}
+		if (framePerSecond < 0) {
+			throw new IllegalArgumentException("--fps must not be negative");
+		}
+		if (maximumFramePerSecond < 0) {
+			throw new IllegalArgumentException("--max-fps must not be negative");
+		}
+		if (targetSizeInKiloBytes < 0) {
+			throw new IllegalArgumentException("--target-size must not be negative");
+		}
+	}
+
+	private static QuantizationTier parseTier(String value) {
+		for (QuantizationTier tier : QuantizationTier.values()) {
+			if (tier.name().equalsIgnoreCase(value)) {
+				return tier;
+			}
+		}
+		throw new IllegalArgumentException("Invalid value for --tier: " + value);
+	}
+
+	private boolean run() {
+		if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+			System.err.println("Cannot create " + outputDirectory);
+			return false;
+		}
+
+		// one job per video, each with its own VideoCapture
+		long batchStartTime = System.nanoTime();
+		ExecutorService workers = Executors.newFixedThreadPool(numberOfThreads);
+		List<Future<Boolean>> jobs = new ArrayList<Future<Boolean>>();
+		for (File inputFile : inputFiles) {
+			jobs.add(workers.submit(() -> convert(inputFile)));
+		}
+		workers.shutdown();
+
+		boolean succeeded = true;
+		for (Future<Boolean> job : jobs) {
+			try {
+				succeeded &= job.get();
+			} catch (Exception e) {
+				System.err.println("Something is wrong: " + e);
+				succeeded = false;
+			}
+		}
+		try {
+			workers.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		System.out.printf("%d videos in %d ms%n", inputFiles.size(), (System.nanoTime() - batchStartTime) / 1000000);
+		return succeeded;
+	}
+
+	private boolean convert(File inputFile) {
+		long startTime = System.nanoTime();
+		VideoCapture capture = new VideoCapture(inputFile.getAbsolutePath());
+		try {
+			if (!capture.isOpened()) {
+				System.err.println(inputFile + ": cannot open the video");
+				return false;
+			}
+			double totalFrameCount = capture.get(Videoio.CAP_PROP_FRAME_COUNT);
+			double durationInMilliSeconds = totalFrameCount / capture.get(Videoio.CAP_PROP_FPS) * 1000;
+			double startInMilliSeconds = Math.min(startInSeconds * 1000, durationInMilliSeconds);
+			double endInMilliSeconds = endInSeconds < 0 ? durationInMilliSeconds : Math.min(endInSeconds * 1000, durationInMilliSeconds);
+
+			String name = inputFile.getName();
+			if (name.lastIndexOf('.') > 0) {
+				name = name.substring(0, name.lastIndexOf('.'));
+			}
+			File outputFile = new File(outputDirectory, name + ".gif");
+
+			// the workers already use every core, so each encoder runs on its own worker
+			GIFExporter exporter = new GIFExporter();
+			exporter.setText(caption);
+			exporter.setScale(scale);
+			exporter.setFramePerSecond(framePerSecond);
+			exporter.setMotionAdaptiveSampling(maximumFramePerSecond);
+			exporter.setQuantizationTier(quantizationTier);
+			exporter.setTargetSize(targetSizeInKiloBytes * 1024); // the scale and the frame rate given become the highest tried
+			exporter.setVideoIndex(VideoIndex.load(inputFile)); // only if the GUI has indexed the video already
+			exporter.setSegmentedDecoding(inputFile, Math.max(1, numberOfThreads / inputFiles.size())); // spare threads decode parts of a long video
+			ExportStatistics statistics = verbose ? new ExportStatistics() : null;
+			exporter.setListener(statistics);
+			exporter.export(capture, startInMilliSeconds, endInMilliSeconds, outputFile);
+
+			System.out.printf("%s -> %s: %d ms, %d bytes%n", inputFile, outputFile, (System.nanoTime() - startTime) / 1000000, outputFile.length());
+			if (targetSizeInKiloBytes > 0) {
+				System.out.printf("  scale %.3f, %.2f fps, %d colors%n", exporter.getOutputScale(), exporter.getOutputFramePerSecond(), exporter.getNumberOfColors());
+			}
+			if (statistics != null) {
+				System.out.println("  " + statistics);
+			}
+			return true;
+		} catch (Exception e) {
+			System.err.println(inputFile + ": " + e);
+			return false;
+		} finally {
+			capture.release();
+		}
+	}
+}
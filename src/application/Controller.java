@@ -2,14 +2,17 @@ package application;
 
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.controlsfx.control.RangeSlider;
 import org.opencv.core.Core;
+import org.opencv.core.CvType;
 import org.opencv.core.Mat;
 import org.opencv.core.Point;
 import org.opencv.core.Scalar;
@@ -18,19 +21,21 @@ import org.opencv.imgproc.Imgproc;
 import org.opencv.videoio.VideoCapture;
 import org.opencv.videoio.Videoio;
 
-import encoder.GIFEncoder;
+import encoder.FrameMetrics;
+import javafx.application.Platform;
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
+import javafx.scene.control.Button;
 import javafx.scene.control.RadioButton;
 import javafx.scene.control.TextField;
 import javafx.scene.control.ToggleGroup;
-import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.input.MouseEvent;
 import javafx.stage.FileChooser;
-import utilities.Utilities;
+import utilities.MatImageWriter;
+import utilities.MatPool;
 
 public class Controller {
 	@FXML
@@ -47,9 +52,43 @@ public class Controller {
 	private RadioButton fullRadioButton; // the full resolution radio button in the GUI
 	@FXML
 	private ToggleGroup radioButtonGroup; // the group of 3 radio buttons
+	@FXML
+	private Button openButton; // the open button in the GUI
+	@FXML
+	private Button saveButton; // the save button in the GUI, shows the progress while exporting
 	
 	private VideoCapture capture; // the video file
 	
+	private PreviewFrameCache frameCache; // decoded preview frames of the video file
+	
+	private MatImageWriter previewWriter; // shows the preview frames in the image display window
+	
+	private MatPool matPool = new MatPool(2); // the preview frames and thumbnails, instead of two new Mats per frame
+	
+	private AtomicInteger previewFrameNumber = new AtomicInteger(); // the next frame to be displayed
+	
+	private final long frameCacheCapacity = 128 * 1024 * 1024; // in bytes
+	
+	private final int thumbnailHeight = 45; // in pixels
+	
+	private File videoFile; // the opened video file
+	
+	private volatile VideoIndex videoIndex; // timestamps and thumbnails of the video file, null until it is built
+	
+	private ExecutorService indexer = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "video indexer");
+		thread.setDaemon(true);
+		return thread;
+	});
+	
+	private ExecutorService exporter = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "GIF exporter");
+		thread.setDaemon(true);
+		return thread;
+	});
+	
+	private ChangeListener<Number> rangeListener; // on both handles of the range slider, added with the first video
+	
 	private ScheduledExecutorService timer; // a timer for acquiring the video stream
 	
 	private String text; // the text to be put on the output GIF
@@ -69,54 +108,61 @@ public class Controller {
 	    File file = chooser.showOpenDialog(imageView.getScene().getWindow());
 	    if (file != null && file.isFile()) {
 	    	defaultDirectory = file.getParent();
+			shutdownTimer();
+			if (frameCache != null) {
+				frameCache.close();
+			}
 			capture = new VideoCapture(file.getAbsolutePath()); // open video file
 			if (capture.isOpened()) { // open successfully
+				frameCache = new PreviewFrameCache(file.getAbsolutePath(), imageView.getFitWidth(), imageView.getFitHeight(), frameCacheCapacity);
+				previewFrameNumber.set(0);
+				if (previewWriter == null) {
+					previewWriter = new MatImageWriter(imageView.imageProperty());
+				}
 				createFrameGrabber();
 				
-				ChangeListener<Number> changeListener = new ChangeListener<Number>() {
-				      @Override 
-				      public void changed(ObservableValue<? extends Number> observableValue, Number oldValue, Number newValue) {
-				    	  try {
-						  		if (capture.isOpened()) { // the video capture must be open
-						  			
-									double totalFrameCount = capture.get(Videoio.CAP_PROP_FRAME_COUNT);
-									double percentageOfFramesToBeSkipped = rangeSlider.getLowValue() / rangeSlider.getMax();
-									double numberOfFramesToBeSkipped = totalFrameCount * percentageOfFramesToBeSkipped;
-									double framePerSecond = capture.get(Videoio.CAP_PROP_FPS);
-
-									// terminate the timer if it is running 
-									if (timer != null && !timer.isShutdown()) {
-										timer.shutdown();
-										timer.awaitTermination(Math.round(1000/framePerSecond), TimeUnit.MILLISECONDS);
-									}
-						  			
-									// skip all frames before the starting point
-									capture.set(Videoio.CAP_PROP_POS_FRAMES, numberOfFramesToBeSkipped);
-									
-									// decode that frame
-									Mat frame = new Mat();
-									if (capture.read(frame)) { // decode successfully
-										
-										// create a copy to that frame
-										Mat frameCopy = new Mat();
-										frame.copyTo(frameCopy);
-										
-										// add text
-										addTextToImage(frameCopy, new Point((double)frameCopy.cols()*3/4, (double)frameCopy.rows()*3/4), new Scalar(255, 255, 255), 3);
-										
-										Image im = Utilities.mat2Image(frameCopy);
-										imageView.setImage(im);
+				// index the video in the background, or load the index cached next to it
+				videoFile = file;
+				videoIndex = null;
+				indexer.execute(() -> {
+					try {
+						VideoIndex index = VideoIndex.loadOrBuild(file, thumbnailHeight);
+						if (file.equals(videoFile)) { // unless another video has been opened in the meantime
+							videoIndex = index;
+						}
+					} catch (IOException e) {
+						System.err.println("Something is wrong: " + e);
+					}
+				});
+				
+				// the listener reads the capture and the cache from the fields, so one serves every video opened later
+				if (rangeListener == null) {
+					rangeListener = new ChangeListener<Number>() {
+					      @Override 
+					      public void changed(ObservableValue<? extends Number> observableValue, Number oldValue, Number newValue) {
+					    	  if (capture.isOpened()) { // the video capture must be open
+				    		  
+									// restart the preview from the starting point, the frame grabber keeps running
+									int firstFrame = getFirstFrameToBeDisplayed();
+									previewFrameNumber.set(firstFrame);
+								
+									// show that frame if it is cached, otherwise its thumbnail until the prefetcher decodes it,
+									// and only decode it here when there is no thumbnail yet
+									Mat frame = acquire(frameCache.getFrameSize());
+									if (getPreviewFrame(firstFrame, frame)) {
+										addTextToPreview(frame);
+										previewWriter.write(frame);
 									}
-									
-									createFrameGrabber();
-								}
-				    	  } catch (InterruptedException e) {
-				  			System.err.println("Something is wrong: " + e);;
-				    	  }		
-				      }
-				 };
-				rangeSlider.lowValueProperty().addListener(changeListener);
-				rangeSlider.highValueProperty().addListener(changeListener);
+									matPool.release(frame);
+								
+									// get the frames around both handles ready while the user is still dragging
+									frameCache.prefetch(firstFrame, getLastFrameToBeDisplayed());
+					    	  }
+					      }
+					 };
+					rangeSlider.lowValueProperty().addListener(rangeListener);
+					rangeSlider.highValueProperty().addListener(rangeListener);
+				}
 			}
 	    }
 	}
@@ -131,31 +177,27 @@ public class Controller {
 			if (capture != null && capture.isOpened()) { // the video capture must be open
 
 				double framePerSecond = capture.get(Videoio.CAP_PROP_FPS);
-				double totalFrameCount = capture.get(Videoio.CAP_PROP_FRAME_COUNT);
-				double LastFrameToBeDisplayed = rangeSlider.getHighValue() / rangeSlider.getMax() * totalFrameCount;
+				PreviewFrameCache cache = frameCache;
 				
-				// create a runnable to fetch new frames periodically
+				// create a runnable to display the frames between the handles in a loop
 				Runnable frameGrabber = new Runnable() {
 					@Override
 					public void run() {
-						Mat frame = new Mat();
-						double currentFrameNumber = capture.get(Videoio.CAP_PROP_POS_FRAMES);
-						if (currentFrameNumber >= LastFrameToBeDisplayed) {
-							double percentageOfFramesToBeSkipped = rangeSlider.getLowValue() / rangeSlider.getMax();
-							double numberOfFramesToBeSkipped = totalFrameCount * percentageOfFramesToBeSkipped;
-							capture.set(Videoio.CAP_PROP_POS_FRAMES, numberOfFramesToBeSkipped);
+						int currentFrameNumber = previewFrameNumber.get();
+						int frameNumber = currentFrameNumber;
+						if (frameNumber >= getLastFrameToBeDisplayed() || frameNumber < getFirstFrameToBeDisplayed()) {
+							frameNumber = getFirstFrameToBeDisplayed();
 						}
-						if (capture.read(frame)) { // decode successfully
-							// create a copy to that frame
-							Mat frameCopy = new Mat();
-							frame.copyTo(frameCopy);
-							
+						Mat frame = acquire(cache.getFrameSize());
+						if (cache.getFrame(frameNumber, frame)) { // decode successfully, or found in the cache
 							// add text
-							addTextToImage(frameCopy, new Point((double)frameCopy.cols()*3/4, (double)frameCopy.rows()*3/4), new Scalar(255, 255, 255), 3);
+							addTextToPreview(frame);
 							
-							Image im = Utilities.mat2Image(frameCopy);
-							Utilities.onFXThread(imageView.imageProperty(), im);
+							previewWriter.write(frame); // copies the pixels, so the frame can be reused right away
 						}
+						matPool.release(frame);
+						// unless a handle has moved in the meantime
+						previewFrameNumber.compareAndSet(currentFrameNumber, frameNumber + 1);
 					}
 				};
 				
@@ -199,57 +241,57 @@ public class Controller {
 					}
 					
 					double totalFrameCount = capture.get(Videoio.CAP_PROP_FRAME_COUNT);
-					double framePerSecond = capture.get(Videoio.CAP_PROP_FPS);
-					double percentageOfFramesToBeSkipped = rangeSlider.getLowValue() / rangeSlider.getMax();
-					double numberOfFramesToBeSkipped = totalFrameCount * percentageOfFramesToBeSkipped;
-					final double samplePerSecond = framePerSecond/2;
-					final double sampleRate = framePerSecond / samplePerSecond - 1;
-					int numberOfFramesToBeSampled = (int) Math.round((rangeSlider.getHighValue() - rangeSlider.getLowValue()) / rangeSlider.getMax() * totalFrameCount * samplePerSecond / framePerSecond);
-					
-					
-					// skip all frames before the starting point
-					capture.set(Videoio.CAP_PROP_POS_FRAMES, numberOfFramesToBeSkipped);
+					double durationInMilliSeconds = totalFrameCount / capture.get(Videoio.CAP_PROP_FPS) * 1000;
+					double startInMilliSeconds = rangeSlider.getLowValue() / rangeSlider.getMax() * durationInMilliSeconds;
+					double endInMilliSeconds = rangeSlider.getHighValue() / rangeSlider.getMax() * durationInMilliSeconds;
 					
-					// read that frame
-					Mat[] frames = new Mat[numberOfFramesToBeSampled];
-					for (int i = 0; i < numberOfFramesToBeSampled; i++) {
-						frames[i] = new Mat();
-						for (int j = 0; j < sampleRate; j++) {
-							capture.grab();
+					// convert the selected range in the background, with a capture of its own, so the window stays responsive
+					GIFExporter gifExporter = new GIFExporter();
+					gifExporter.setText(text);
+					gifExporter.setScale(getSelectedScale());
+					gifExporter.setExecutor(ForkJoinPool.commonPool());
+					gifExporter.setVideoIndex(videoIndex);
+					gifExporter.setSegmentedDecoding(videoFile, Runtime.getRuntime().availableProcessors());
+					gifExporter.setListener(new ExportListener() {
+						private int shownPercentage = -1;
+						
+						@Override
+						public void frameEncoded(FrameMetrics metrics) {
 						}
-						if (!capture.read(frames[i])) { 
-							System.err.println("Failed to read a new frame.");;
+						
+						@Override
+						public void frameExported(int numberOfFramesExported, int numberOfOutputFrames) {
+							int percentage = Math.min(100, numberOfFramesExported * 100 / Math.max(1, numberOfOutputFrames));
+							if (percentage != shownPercentage) { // at most a hundred updates per export
+								shownPercentage = percentage;
+								Platform.runLater(() -> saveButton.setText(percentage + "%"));
+							}
 						}
-					}
-					
-					// create copies for the frames
-					Mat[] framesCopy = new Mat[frames.length];
-					for (int i = 0; i < frames.length; i++) {
-						framesCopy[i] = new Mat();
-						frames[i].copyTo(framesCopy[i]);
-					}
-					
-					// add text
-					addTextToImages(framesCopy, new Point((double)framesCopy[0].cols()*3/4, (double)framesCopy[0].rows()*3/4), new Scalar(255, 255, 255), 3);
-					
-					// reduce resolution
-					reduceImageResolution(framesCopy);
-					
-					// encode that frame
-					GIFEncoder encoder = new GIFEncoder(framesCopy);
-					byte[] data = encoder.encode((short) (1000/samplePerSecond));
-					
-					// output to a file
-					FileOutputStream outputStream = new FileOutputStream(file.getAbsolutePath());
-					outputStream.write(data);
-					outputStream.close();
-					
-					createFrameGrabber();
+					});
+					File exportedVideoFile = videoFile;
+					openButton.setDisable(true);
+					saveButton.setDisable(true);
+					exporter.execute(() -> {
+						VideoCapture exportCapture = new VideoCapture(exportedVideoFile.getAbsolutePath());
+						try {
+							gifExporter.export(exportCapture, startInMilliSeconds, endInMilliSeconds, file);
+						} catch (IOException e) {
+							System.err.println("Something is wrong: " + e);
+						} catch (InterruptedException e) {
+							System.err.println("Something is wrong: " + e);
+						} finally {
+							exportCapture.release();
+							Platform.runLater(() -> {
+								saveButton.setText("Save");
+								saveButton.setDisable(false);
+								openButton.setDisable(false);
+								createFrameGrabber();
+							});
+						}
+					});
 			    }
 				
 			}
-		} catch (IOException e) {
-			System.err.println("Something is wrong: " + e);;
 		} catch (InterruptedException e) {
 			System.err.println("Something is wrong: " + e);;
 		}
@@ -263,31 +305,56 @@ public class Controller {
 		}
 	}
 
-	protected void addTextToImages(Mat[] images, Point position, Scalar color, int fontSize) {
+	protected void addTextToImage(Mat image, Point position, Scalar color, double fontScale, int thickness) {
 		if (text != null) {
-			for (int i = 0; i < images.length; i++) {
-				Imgproc.putText(images[i], text, position, Core.FONT_HERSHEY_PLAIN, fontSize, color, fontSize);
-			}
+			Imgproc.putText(image, text, position, Core.FONT_HERSHEY_PLAIN, fontScale, color, thickness);
 		}
 	}
 	
-	protected void addTextToImage(Mat image, Point position, Scalar color, int fontSize) {
-		if (text != null) {
-			Imgproc.putText(image, text, position, Core.FONT_HERSHEY_PLAIN, fontSize, color, fontSize);
+	protected boolean getPreviewFrame(int frameNumber, Mat frame) {
+		if (frameCache.getCachedFrame(frameNumber, frame)) {
+			return true;
 		}
+		VideoIndex index = videoIndex;
+		if (index != null) {
+			Mat thumbnail = acquire(index.getThumbnailSize());
+			boolean found = index.getThumbnail(frameNumber, thumbnail);
+			if (found) {
+				Imgproc.resize(thumbnail, frame, frameCache.getFrameSize());
+			}
+			matPool.release(thumbnail);
+			if (found) {
+				return true;
+			}
+		}
+		return frameCache.getFrame(frameNumber, frame);
+	}
+	
+	protected Mat acquire(Size size) {
+		return matPool.acquire((int) size.height, (int) size.width, CvType.CV_8UC3);
+	}
+	
+	protected void addTextToPreview(Mat image) {
+		// the preview is smaller than the video, so the text is scaled to look the same
+		double scale = frameCache.getScale();
+		addTextToImage(image, new Point((double)image.cols()*3/4, (double)image.rows()*3/4), new Scalar(255, 255, 255), 3*scale, Math.max(1, (int) Math.round(3*scale)));
+	}
+	
+	protected int getFirstFrameToBeDisplayed() {
+		return (int) (rangeSlider.getLowValue() / rangeSlider.getMax() * capture.get(Videoio.CAP_PROP_FRAME_COUNT));
 	}
 	
-	protected void reduceImageResolution(Mat[] images) {
-		Size reducedSize;
+	protected int getLastFrameToBeDisplayed() {
+		return (int) (rangeSlider.getHighValue() / rangeSlider.getMax() * capture.get(Videoio.CAP_PROP_FRAME_COUNT));
+	}
+	
+	protected double getSelectedScale() {
 		if (fullRadioButton.isSelected()) {
-			return;
+			return 1;
 		} else if (quarterRadioButton.isSelected()) {
-			reducedSize = new Size(images[0].cols()/4, images[0].rows()/4);
+			return 0.25;
 		} else {
-			reducedSize = new Size(images[0].cols()/2, images[0].rows()/2);
-		}
-		for (int i = 0; i < images.length; i++) {
-			Imgproc.resize(images[i], images[i], reducedSize);
+			return 0.5;
 		}
 	}
 	
@@ -0,0 +1,19 @@
+package application;
+
+import encoder.EncoderListener;
+
+public interface ExportListener extends EncoderListener {
+	
+	// the stages before encoding, each called on the thread of its stage, times are in nanoseconds
+	
+	default void frameDecoded(int frameIndex, long decodeNanos) {
+	}
+	
+	default void framePreprocessed(int frameIndex, long resizeNanos, long overlayNanos) {
+	}
+	
+	default void frameExported(int numberOfFramesExported, int numberOfOutputFrames) {
+		// called on the exporting thread, in order, once per output frame, whether it was written or shown longer
+	}
+	
+}
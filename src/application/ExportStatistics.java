@@ -0,0 +1,60 @@
+package application;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import encoder.FrameMetrics;
+
+public class ExportStatistics implements ExportListener {
+	
+	// adds up the measurements of one export, the stages report from different threads
+	
+	private AtomicLong numberOfFrames = new AtomicLong();
+	private AtomicLong decodeNanos = new AtomicLong();
+	private AtomicLong resizeNanos = new AtomicLong();
+	private AtomicLong overlayNanos = new AtomicLong();
+	private AtomicLong deltaNanos = new AtomicLong();
+	private AtomicLong quantizeNanos = new AtomicLong();
+	private AtomicLong compressNanos = new AtomicLong();
+	private AtomicLong writeNanos = new AtomicLong();
+	private AtomicLong numberOfColors = new AtomicLong();
+	private AtomicLong numberOfPixels = new AtomicLong();
+	private AtomicLong compressedBytes = new AtomicLong();
+	private AtomicLong allocatedBytes = new AtomicLong();
+	
+	@Override
+	public void frameDecoded(int frameIndex, long nanos) {
+		decodeNanos.addAndGet(nanos);
+	}
+	
+	@Override
+	public void framePreprocessed(int frameIndex, long resizeNanos, long overlayNanos) {
+		this.resizeNanos.addAndGet(resizeNanos);
+		this.overlayNanos.addAndGet(overlayNanos);
+	}
+	
+	@Override
+	public void frameEncoded(FrameMetrics metrics) {
+		numberOfFrames.incrementAndGet();
+		deltaNanos.addAndGet(metrics.deltaNanos);
+		quantizeNanos.addAndGet(metrics.quantizeNanos);
+		compressNanos.addAndGet(metrics.compressNanos);
+		writeNanos.addAndGet(metrics.writeNanos);
+		numberOfColors.addAndGet(metrics.numberOfColors);
+		numberOfPixels.addAndGet((long) metrics.width*metrics.height);
+		compressedBytes.addAndGet(metrics.compressedBytes);
+		if (metrics.allocatedBytes > 0) {
+			allocatedBytes.addAndGet(metrics.allocatedBytes);
+		}
+	}
+	
+	@Override
+	public String toString() {
+		// the stages overlap in time, so the sum is more than the time the export took
+		long frames = Math.max(1, numberOfFrames.get());
+		return String.format("%d frames, decode %d ms, resize %d ms, overlay %d ms, delta %d ms, quantize %d ms, LZW %d ms, write %d ms, "
+				+ "%d colors per frame, %d bytes compressed at %.2f:1, %d MB allocated by the encoder",
+				numberOfFrames.get(), decodeNanos.get()/1000000, resizeNanos.get()/1000000, overlayNanos.get()/1000000, deltaNanos.get()/1000000,
+				quantizeNanos.get()/1000000, compressNanos.get()/1000000, writeNanos.get()/1000000, numberOfColors.get()/frames,
+				compressedBytes.get(), compressedBytes.get() == 0 ? 0 : (double) numberOfPixels.get()/compressedBytes.get(), allocatedBytes.get()/(1024*1024));
+	}
+}
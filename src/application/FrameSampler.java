@@ -0,0 +1,141 @@
+package application;
+
+import org.opencv.core.Mat;
+import org.opencv.videoio.VideoCapture;
+import org.opencv.videoio.Videoio;
+
+public class FrameSampler {
+
+	// picks the frames shown at regular output times, by presentation timestamp,
+	// seeking over long gaps and only grabbing (not retrieving) the frames in short ones
+
+	private final double seekThresholdInMilliSeconds = 1000; // longer gaps are cheaper to seek over than to decode
+	private final double toleranceInMilliSeconds = 0.001; // timestamps computed in different ways still match
+
+	private VideoCapture capture;
+	private VideoIndex index; // the timestamps of all frames, null if unknown
+	private double startInMilliSeconds;
+	private double endInMilliSeconds;
+	private double outputFramePerSecond;
+	private double videoFrameDuration; // in milliseconds
+	private double nextFrameTime; // the timestamp of the frame the next grab returns
+	private int nextFrameNumber; // only tracked with an index
+	private int numberOfSampledFrames = 0;
+
+	public FrameSampler(VideoCapture capture, double startInMilliSeconds, double endInMilliSeconds, double outputFramePerSecond) {
+		this(capture, null, startInMilliSeconds, endInMilliSeconds, outputFramePerSecond);
+	}
+
+	public FrameSampler(VideoCapture capture, VideoIndex index, double startInMilliSeconds, double endInMilliSeconds, double outputFramePerSecond) {
+		this(capture, index, startInMilliSeconds, endInMilliSeconds, outputFramePerSecond, 0);
+	}
+
+	public FrameSampler(VideoCapture capture, VideoIndex index, double startInMilliSeconds, double endInMilliSeconds, double outputFramePerSecond, int firstOutputFrameIndex) {
+		// starts at the given output frame rather than at the first one, so a range can be split between several samplers
+		// that pick exactly the frames one sampler would
+		this.capture = capture;
+		this.index = index;
+		this.startInMilliSeconds = startInMilliSeconds;
+		this.endInMilliSeconds = endInMilliSeconds;
+		this.outputFramePerSecond = outputFramePerSecond;
+		videoFrameDuration = 1000 / capture.get(Videoio.CAP_PROP_FPS);
+		numberOfSampledFrames = firstOutputFrameIndex;
+
+		// skip all frames before the starting point
+		seek(getOutputTime(firstOutputFrameIndex));
+	}
+
+	public boolean read(Mat frame) {
+		// reads the next sampled frame, returns false after the last one
+		double targetTime = getOutputTime(numberOfSampledFrames);
+		if (targetTime >= endInMilliSeconds) {
+			return false;
+		}
+
+		if (targetTime - nextFrameTime > seekThresholdInMilliSeconds) {
+			seek(targetTime);
+		}
+		// the next frame is not needed if the one after it is still shown by the target time
+		while (getFollowingFrameTime() <= targetTime + toleranceInMilliSeconds) {
+			if (!capture.grab()) {
+				return false;
+			}
+			advance();
+		}
+		if (!capture.read(frame)) {
+			return false;
+		}
+		advance();
+		numberOfSampledFrames++;
+		return true;
+	}
+
+	public short getDelayInMilliSeconds(int frameIndex) {
+		return getDelayInMilliSeconds(outputFramePerSecond, frameIndex);
+	}
+
+	public static short getDelayInMilliSeconds(double outputFramePerSecond, int frameIndex) {
+		// GIF delays are in hundredths of a second, so they are rounded from the output times to avoid drift
+		long start = Math.round(frameIndex * 100 / outputFramePerSecond);
+		long end = Math.round((frameIndex + 1) * 100 / outputFramePerSecond);
+		return (short) ((end - start) * 10);
+	}
+
+	public static double getOutputTime(double startInMilliSeconds, double outputFramePerSecond, int frameIndex) {
+		return startInMilliSeconds + frameIndex * 1000 / outputFramePerSecond;
+	}
+
+	public static int getNumberOfOutputFrames(double startInMilliSeconds, double endInMilliSeconds, double outputFramePerSecond) {
+		int numberOfFrames = Math.max(0, (int) ((endInMilliSeconds - startInMilliSeconds) * outputFramePerSecond / 1000));
+		while (getOutputTime(startInMilliSeconds, outputFramePerSecond, numberOfFrames) < endInMilliSeconds) {
+			numberOfFrames++;
+		}
+		while (numberOfFrames > 0 && getOutputTime(startInMilliSeconds, outputFramePerSecond, numberOfFrames - 1) >= endInMilliSeconds) {
+			numberOfFrames--;
+		}
+		return numberOfFrames;
+	}
+
+	private double getOutputTime(int frameIndex) {
+		return getOutputTime(startInMilliSeconds, outputFramePerSecond, frameIndex);
+	}
+
+	private void seek(double time) {
+		if (index != null) { // seeking to a known frame is exact on every backend
+			nextFrameNumber = index.getFrameNumber(time + toleranceInMilliSeconds);
+			capture.set(Videoio.CAP_PROP_POS_FRAMES, nextFrameNumber);
+			nextFrameTime = index.getTimestamp(nextFrameNumber);
+			return;
+		}
+		nextFrameTime = time;
+		if (!capture.set(Videoio.CAP_PROP_POS_MSEC, time)) { // not every backend seeks by time
+			double frameNumber = Math.floor((time + toleranceInMilliSeconds) / videoFrameDuration);
+			capture.set(Videoio.CAP_PROP_POS_FRAMES, frameNumber);
+			nextFrameTime = frameNumber * videoFrameDuration;
+		}
+	}
+
+	private double getFollowingFrameTime() {
+		// the timestamp of the frame after the one the next grab returns
+		if (index != null) {
+			return nextFrameNumber + 1 < index.getFrameCount() ? index.getTimestamp(nextFrameNumber + 1) : Double.POSITIVE_INFINITY;
+		}
+		return nextFrameTime + videoFrameDuration;
+	}
+
+	private void advance() {
+		// after a frame is grabbed
+		if (index != null) {
+			nextFrameNumber++;
+			nextFrameTime = index.getTimestamp(nextFrameNumber);
+		} else {
+			nextFrameTime = getTimestamp(nextFrameTime) + videoFrameDuration;
+		}
+	}
+
+	private double getTimestamp(double expectedTimestamp) {
+		// the timestamp of the frame just grabbed, backends that do not report it are trusted to be regular
+		double timestamp = capture.get(Videoio.CAP_PROP_POS_MSEC);
+		return timestamp > 0 ? timestamp : expectedTimestamp;
+	}
+}
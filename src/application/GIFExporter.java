@@ -0,0 +1,518 @@
+package application;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.videoio.VideoCapture;
+import org.opencv.videoio.Videoio;
+
+import encoder.ByteArrayFrame;
+import encoder.EncoderEvents;
+import encoder.FrameSignature;
+import encoder.GIFStreamEncoder;
+import encoder.QuantizationTier;
+import encoder.SizeEstimator;
+import utilities.MatPool;
+
+public class GIFExporter {
+
+	// converts a range of a video into a GIF file, without touching the GUI
+
+	private String text; // the text to be put on the output GIF, null for none
+	private double scale = 1; // the output resolution relative to the video
+	private Executor executor; // where the encoder runs, null for the calling thread
+	private int queueCapacity = 4;
+	private double framePerSecond = 0; // of the output, 0 for half the video frame rate
+	private double maximumFramePerSecond = 0; // for fast motion, 0 to sample at framePerSecond only
+	private final double mergeTolerance = 2; // frames whose 8x8 block means all stay this close are shown as one, see FrameSignature
+	private final double motionThreshold = 8; // a block mean moving further between samples is fast motion
+	private final double paletteTolerance = 0.1; // the share of pixels in other colors before a frame gets its own palette
+	private QuantizationTier quantizationTier = QuantizationTier.BALANCED; // the default of GIFStreamEncoder
+	private long targetSizeInBytes = 0; // 0 to keep the scale and frame rate as they are set
+	private final int numberOfSizeSamples = 3; // positions in the range where the frames are estimated
+	private final double targetSizeMargin = 0.95; // the estimates are a few percent off either way
+	private final double[] targetScales = { 1, 0.75, 0.5, 0.375, 0.25, 0.125 }; // relative to the scale set
+	private final int[] targetFrameRateDivisors = { 1, 2, 3 }; // of the frame rate set
+	private final int[] targetNumberOfColors = { 256, 128, 64, 32 };
+	private double outputScale; // chosen for the last export
+	private double outputFramePerSecond;
+	private int numberOfColors;
+	private VideoIndex videoIndex; // of the video, null if not built
+	private ExportListener listener; // null to skip all measurements unless a JFR recording wants them
+	private File videoFile; // the file of the video, needed to open more captures for segmented decoding
+	private int numberOfDecoders = 1;
+	private final double minimumSegmentInMilliSeconds = 2000; // shorter segments do not pay for opening a capture and seeking
+	private final double minimumSegmentedRangeInMilliSeconds = 10000; // shorter ranges are decoded by one capture
+	private final long segmentReadAheadInBytes = 64 * 1024 * 1024; // of prepared frames, shared by the segments waiting for the encoder
+
+	public void setText(String text) {
+		this.text = text;
+	}
+
+	public void setScale(double scale) {
+		if (scale <= 0 || scale > 1) {
+			throw new IllegalArgumentException("scale must be in (0, 1]: " + scale);
+		}
+		this.scale = scale;
+	}
+
+	public void setExecutor(Executor executor) {
+		this.executor = executor;
+	}
+
+	public void setFramePerSecond(double framePerSecond) {
+		if (framePerSecond < 0) {
+			throw new IllegalArgumentException("framePerSecond must not be negative: " + framePerSecond);
+		}
+		this.framePerSecond = framePerSecond;
+	}
+
+	public void setMotionAdaptiveSampling(double maximumFramePerSecond) {
+		// samples up to this rate, but keeps the frames between the regular samples only where the picture moves fast,
+		// the others are shown longer instead, 0 to disable
+		if (maximumFramePerSecond < 0) {
+			throw new IllegalArgumentException("maximumFramePerSecond must not be negative: " + maximumFramePerSecond);
+		}
+		this.maximumFramePerSecond = maximumFramePerSecond;
+	}
+
+	public void setQuantizationTier(QuantizationTier quantizationTier) {
+		// how finely the colors of every frame are told apart before the palette is chosen
+		this.quantizationTier = quantizationTier;
+	}
+
+	public void setVideoIndex(VideoIndex videoIndex) {
+		// frames are then located by their indexed timestamps instead of the ones the backend reports
+		this.videoIndex = videoIndex;
+	}
+
+	public void setListener(ExportListener listener) {
+		this.listener = listener;
+	}
+
+	public void setSegmentedDecoding(File videoFile, int numberOfDecoders) {
+		// splits ranges of 10 seconds or more into segments, each decoded and preprocessed by its own VideoCapture on its own thread,
+		// a later segment prepares frames ahead within a fixed memory budget, then waits until the encoder reaches it
+		if (numberOfDecoders < 1) {
+			throw new IllegalArgumentException("numberOfDecoders must be positive: " + numberOfDecoders);
+		}
+		this.videoFile = videoFile;
+		this.numberOfDecoders = numberOfDecoders;
+	}
+
+	public void setTargetSize(long targetSizeInBytes) {
+		// choose the scale, the frame rate and the number of colors so that the GIF takes about this many bytes,
+		// the scale and the frame rate set are the highest tried, motion adaptive sampling is not used, 0 to disable
+		if (targetSizeInBytes < 0) {
+			throw new IllegalArgumentException("targetSizeInBytes must not be negative: " + targetSizeInBytes);
+		}
+		this.targetSizeInBytes = targetSizeInBytes;
+	}
+
+	public double getOutputScale() {
+		// of the last export
+		return outputScale;
+	}
+
+	public double getOutputFramePerSecond() {
+		return outputFramePerSecond;
+	}
+
+	public int getNumberOfColors() {
+		return numberOfColors;
+	}
+
+	public void setQueueCapacity(int queueCapacity) {
+		// how many frames may wait between two stages
+		if (queueCapacity < 1) {
+			throw new IllegalArgumentException("queueCapacity must be positive: " + queueCapacity);
+		}
+		this.queueCapacity = queueCapacity;
+	}
+
+	public void export(VideoCapture capture, double startInMilliSeconds, double endInMilliSeconds, File file) throws IOException, InterruptedException {
+		// the stages run concurrently: decode -> overlay and resize -> quantize and compress (on the encoder executor) -> write,
+		// joined by bounded queues, so only a few frames are alive at any time
+		double samplePerSecond = framePerSecond;
+		if (samplePerSecond == 0) {
+			samplePerSecond = capture.get(Videoio.CAP_PROP_FPS)/2;
+		}
+		outputScale = scale;
+		numberOfColors = 256;
+		double regularSampleRatio = 1; // of the frames sampled, the share that are regular samples
+		if (targetSizeInBytes > 0) {
+			samplePerSecond = chooseSettings(capture, startInMilliSeconds, endInMilliSeconds, samplePerSecond);
+		} else if (maximumFramePerSecond > samplePerSecond) {
+			regularSampleRatio = samplePerSecond / maximumFramePerSecond;
+			samplePerSecond = maximumFramePerSecond;
+		}
+		outputFramePerSecond = samplePerSecond;
+		int numberOfOutputFrames = FrameSampler.getNumberOfOutputFrames(startInMilliSeconds, endInMilliSeconds, samplePerSecond);
+		int numberOfSegments = 1;
+		if (videoFile != null && endInMilliSeconds - startInMilliSeconds >= minimumSegmentedRangeInMilliSeconds) {
+			numberOfSegments = (int) Math.max(1, Math.min(numberOfDecoders, (endInMilliSeconds - startInMilliSeconds) / minimumSegmentInMilliSeconds));
+			numberOfSegments = Math.min(numberOfSegments, Math.max(1, numberOfOutputFrames));
+		}
+		final ByteArrayFrame endOfFrames = new ByteArrayFrame(new byte[0], 0, 0); // marks the end of a segment
+		final AtomicBoolean abandoned = new AtomicBoolean(false); // set when nobody reads the queues anymore
+		final boolean measured = listener != null || EncoderEvents.isEnabled();
+
+		// every segment delivers its frames in order through its own queue
+		List<BlockingQueue<ByteArrayFrame>> segments = new ArrayList<BlockingQueue<ByteArrayFrame>>();
+		List<Future<?>> stages = new ArrayList<Future<?>>();
+		List<Runnable> cleanups = new ArrayList<Runnable>();
+		ExecutorService threads = Executors.newFixedThreadPool(numberOfSegments == 1 ? 2 : numberOfSegments);
+		FileOutputStream outputStream = null;
+		int numberOfFramesWritten = 0;
+		try {
+			if (numberOfSegments == 1) {
+				BlockingQueue<ByteArrayFrame> preparedFrames = new ArrayBlockingQueue<ByteArrayFrame>(queueCapacity);
+				segments.add(preparedFrames);
+				FrameSampler sampler = new FrameSampler(capture, videoIndex, startInMilliSeconds, endInMilliSeconds, samplePerSecond);
+				startPipeline(threads, sampler, (int) capture.get(Videoio.CAP_PROP_FRAME_HEIGHT), (int) capture.get(Videoio.CAP_PROP_FRAME_WIDTH),
+						preparedFrames, endOfFrames, abandoned, measured, stages, cleanups);
+			} else {
+				// a later segment decodes ahead only as far as its share of the budget, then waits for the encoder to reach it
+				long outputFrameBytes = Math.max(1, (long) (capture.get(Videoio.CAP_PROP_FRAME_WIDTH)*outputScale) * (long) (capture.get(Videoio.CAP_PROP_FRAME_HEIGHT)*outputScale) * 3);
+				int readAheadCapacity = (int) Math.max(queueCapacity, Math.min(Integer.MAX_VALUE - 1, segmentReadAheadInBytes / (numberOfSegments - 1) / outputFrameBytes));
+				for (int segment = 0; segment < numberOfSegments; segment++) {
+					int firstFrameIndex = segment * numberOfOutputFrames / numberOfSegments;
+					int lastFrameIndex = (segment + 1) * numberOfOutputFrames / numberOfSegments; // excluded
+					double segmentEndInMilliSeconds = segment == numberOfSegments - 1 ? endInMilliSeconds : FrameSampler.getOutputTime(startInMilliSeconds, samplePerSecond, lastFrameIndex);
+					BlockingQueue<ByteArrayFrame> preparedFrames = new ArrayBlockingQueue<ByteArrayFrame>(segment == 0 ? queueCapacity : Math.min(readAheadCapacity, lastFrameIndex - firstFrameIndex + 1));
+					segments.add(preparedFrames);
+					stages.add(startSegment(threads, startInMilliSeconds, segmentEndInMilliSeconds, samplePerSecond, firstFrameIndex, preparedFrames, endOfFrames, abandoned, measured));
+				}
+			}
+
+			// encode the frames straight into the file
+			outputStream = new FileOutputStream(file.getAbsolutePath());
+			GIFStreamEncoder encoder = new GIFStreamEncoder(outputStream.getChannel());
+			encoder.setExecutor(executor);
+			encoder.setDeltaEncoding(true, 4); // ignore small decoding noise between frames
+			encoder.setFrameMerging(true, mergeTolerance); // a still picture becomes one long frame
+			encoder.setPaletteReuse(true, paletteTolerance); // quantize again on scene changes only
+			encoder.setQuantizer(quantizationTier.createQuantizer(numberOfColors));
+			if (numberOfOutputFrames == 1 && executor != null) {
+				// a still image has no other frames to encode in parallel, so its bands are compressed in parallel instead
+				encoder.setBands(Runtime.getRuntime().availableProcessors());
+			}
+			encoder.setListener(listener);
+			FrameSignature keptSignature = null; // of the last frame kept when sampling adaptively
+			for (BlockingQueue<ByteArrayFrame> preparedFrames : segments) {
+				for (ByteArrayFrame frame = preparedFrames.take(); frame != endOfFrames; frame = preparedFrames.take()) {
+					short delayInMilliSeconds = FrameSampler.getDelayInMilliSeconds(samplePerSecond, numberOfFramesWritten);
+					if (regularSampleRatio < 1) {
+						FrameSignature signature = new FrameSignature(frame.getBGRPixels(), frame.getWidth(), frame.getHeight());
+						if (keptSignature != null && !isRegularSample(numberOfFramesWritten, regularSampleRatio) && signature.getDifference(keptSignature) <= motionThreshold) {
+							encoder.extendLastFrame(delayInMilliSeconds);
+							numberOfFramesWritten++;
+							reportProgress(numberOfFramesWritten, numberOfOutputFrames);
+							continue;
+						}
+						keptSignature = signature;
+					}
+					encoder.addFrame(frame, delayInMilliSeconds);
+					numberOfFramesWritten++;
+					reportProgress(numberOfFramesWritten, numberOfOutputFrames);
+				}
+			}
+
+			// report the failures of the other stages
+			for (Future<?> stage : stages) {
+				waitForStage(stage);
+			}
+			if (numberOfFramesWritten == 0) {
+				throw new IOException("No frames could be read from the video");
+			}
+			encoder.finish();
+		} finally {
+			abandoned.set(true);
+			threads.shutdownNow(); // stops the other stages if this one failed
+			awaitStages(threads);
+			for (Runnable cleanup : cleanups) {
+				cleanup.run();
+			}
+			if (outputStream != null) {
+				outputStream.close();
+				if (numberOfFramesWritten == 0) {
+					file.delete();
+				}
+			}
+		}
+	}
+
+	private void reportProgress(int numberOfFramesExported, int numberOfOutputFrames) {
+		if (listener != null) {
+			listener.frameExported(numberOfFramesExported, numberOfOutputFrames);
+		}
+	}
+
+	private void awaitStages(ExecutorService threads) {
+		// a stage inside VideoCapture.read does not stop when interrupted, and the capture and the pooled frames
+		// may only be released once it has returned, so this waits without a timeout, even when interrupted itself
+		boolean interrupted = false;
+		while (true) {
+			try {
+				threads.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void startPipeline(ExecutorService threads, FrameSampler sampler, int rows, int cols, BlockingQueue<ByteArrayFrame> preparedFrames, ByteArrayFrame endOfFrames,
+			AtomicBoolean abandoned, boolean measured, List<Future<?>> stages, List<Runnable> cleanups) {
+		// decoding and preprocessing on two threads of their own
+		BlockingQueue<Mat> decodedFrames = new ArrayBlockingQueue<Mat>(queueCapacity);
+		final Mat endOfDecodedFrames = new Mat();
+		final MatPool framePool = new MatPool(queueCapacity + 2); // every decoded frame is returned here once it is preprocessed
+		Future<?> decoding = threads.submit(() -> {
+			try {
+				decodeFrames(sampler, framePool, rows, cols, decodedFrames, measured);
+			} finally {
+				if (!abandoned.get()) {
+					decodedFrames.put(endOfDecodedFrames);
+				}
+			}
+			return null;
+		});
+		Future<?> preprocessing = threads.submit(() -> {
+			Mat outputFrame = new Mat(); // reused by every frame
+			try {
+				int frameIndex = 0;
+				for (Mat frame = decodedFrames.take(); frame != endOfDecodedFrames; frame = decodedFrames.take()) {
+					preparedFrames.put(preprocess(frame, outputFrame, outputScale, frameIndex++, measured));
+					framePool.release(frame);
+				}
+			} finally {
+				outputFrame.release();
+				if (!abandoned.get()) {
+					preparedFrames.put(endOfFrames);
+				}
+			}
+			return null;
+		});
+		// a failed preprocessing stage explains a stalled decoding stage, not the other way around
+		stages.add(preprocessing);
+		stages.add(decoding);
+		cleanups.add(() -> {
+			releaseFrames(decodedFrames);
+			framePool.clear();
+			endOfDecodedFrames.release();
+		});
+	}
+
+	private Future<?> startSegment(ExecutorService threads, double startInMilliSeconds, double endInMilliSeconds, double samplePerSecond, int firstFrameIndex,
+			BlockingQueue<ByteArrayFrame> preparedFrames, ByteArrayFrame endOfFrames, AtomicBoolean abandoned, boolean measured) {
+		// decodes and preprocesses one segment on one thread, with its own capture
+		return threads.submit(() -> {
+			VideoCapture capture = new VideoCapture(videoFile.getAbsolutePath());
+			Mat frame = new Mat();
+			Mat outputFrame = new Mat();
+			try {
+				if (!capture.isOpened()) {
+					throw new IOException("Cannot open " + videoFile);
+				}
+				// the backend seeks to the keyframe before the segment and decodes forward from there
+				FrameSampler sampler = new FrameSampler(capture, videoIndex, startInMilliSeconds, endInMilliSeconds, samplePerSecond, firstFrameIndex);
+				for (int frameIndex = firstFrameIndex; decodeFrame(sampler, frame, frameIndex, measured); frameIndex++) {
+					preparedFrames.put(preprocess(frame, outputFrame, outputScale, frameIndex, measured));
+				}
+			} finally {
+				frame.release();
+				outputFrame.release();
+				capture.release();
+				if (!abandoned.get()) {
+					preparedFrames.put(endOfFrames);
+				}
+			}
+			return null;
+		});
+	}
+
+	private void decodeFrames(FrameSampler sampler, MatPool framePool, int rows, int cols, BlockingQueue<Mat> decodedFrames, boolean measured) throws InterruptedException {
+		for (int frameIndex = 0; ; frameIndex++) {
+			Mat frame = framePool.acquire(rows, cols, CvType.CV_8UC3); // decoded in place when the size matches
+			if (!decodeFrame(sampler, frame, frameIndex, measured)) {
+				framePool.release(frame);
+				return;
+			}
+			decodedFrames.put(frame);
+		}
+	}
+
+	private boolean decodeFrame(FrameSampler sampler, Mat frame, int frameIndex, boolean measured) {
+		long startTime = measured ? System.nanoTime() : 0;
+		if (!sampler.read(frame)) {
+			return false;
+		}
+		if (measured) {
+			long decodeNanos = System.nanoTime() - startTime;
+			if (listener != null) {
+				listener.frameDecoded(frameIndex, decodeNanos);
+			}
+			EncoderEvents.stageCompleted("decode", frameIndex, decodeNanos);
+		}
+		return true;
+	}
+
+	private double chooseSettings(VideoCapture capture, double startInMilliSeconds, double endInMilliSeconds, double highestFramePerSecond) {
+		// estimates every combination of scale, frame rate and number of colors from a few frames in the range,
+		// and keeps the one with the most pixels per second that fits, or the smallest if none does, returns the frame rate
+		int numberOfDivisors = targetFrameRateDivisors.length;
+		int highestDivisor = targetFrameRateDivisors[numberOfDivisors - 1];
+		double[][] firstFrameSizes = new double[targetScales.length][targetNumberOfColors.length];
+		double[][][] followingFrameSizes = new double[targetScales.length][targetNumberOfColors.length][numberOfDivisors];
+		int numberOfSamples = 0;
+		Mat frame = new Mat();
+		Mat outputFrame = new Mat();
+		try {
+			for (int sample = 0; sample < numberOfSizeSamples; sample++) {
+				// the frame at the sample position, and the following frames at the highest frame rate
+				double sampleTime = startInMilliSeconds + (endInMilliSeconds - startInMilliSeconds)*sample/numberOfSizeSamples;
+				FrameSampler sampler = new FrameSampler(capture, videoIndex, sampleTime, Double.POSITIVE_INFINITY, highestFramePerSecond);
+				List<Mat> frames = new ArrayList<Mat>();
+				for (int i = 0; i <= highestDivisor && sampler.read(frame); i++) {
+					frames.add(frame.clone());
+				}
+				if (frames.isEmpty()) {
+					continue;
+				}
+				numberOfSamples++;
+				for (int s = 0; s < targetScales.length; s++) {
+					ByteArrayFrame[] scaledFrames = new ByteArrayFrame[frames.size()];
+					for (int i = 0; i < frames.size(); i++) {
+						scaledFrames[i] = preprocess(frames.get(i), outputFrame, scale*targetScales[s], -1, false);
+					}
+					SizeEstimator estimator = new SizeEstimator(4);
+					for (int c = 0; c < targetNumberOfColors.length; c++) {
+						firstFrameSizes[s][c] += estimator.estimateFrameSize(scaledFrames[0], null, targetNumberOfColors[c]);
+						for (int d = 0; d < numberOfDivisors; d++) {
+							// the next frame at a lower frame rate is further away
+							int next = Math.min(targetFrameRateDivisors[d], scaledFrames.length - 1);
+							followingFrameSizes[s][c][d] += next == 0 ? 0 : estimator.estimateFrameSize(scaledFrames[next], scaledFrames[0], targetNumberOfColors[c]);
+						}
+					}
+				}
+				for (Mat sampledFrame : frames) {
+					sampledFrame.release();
+				}
+			}
+		} finally {
+			frame.release();
+			outputFrame.release();
+		}
+		if (numberOfSamples == 0) {
+			return highestFramePerSecond; // the export itself reports the error
+		}
+
+		double chosenFramePerSecond = highestFramePerSecond;
+		long budget = (long) (targetSizeInBytes*targetSizeMargin);
+		double bestPixelRate = -1;
+		long smallestSize = Long.MAX_VALUE;
+		boolean fits = false;
+		for (int s = 0; s < targetScales.length; s++) {
+			for (int d = 0; d < numberOfDivisors; d++) {
+				double framePerSecond = highestFramePerSecond / targetFrameRateDivisors[d];
+				int numberOfFrames = FrameSampler.getNumberOfOutputFrames(startInMilliSeconds, endInMilliSeconds, framePerSecond);
+				for (int c = 0; c < targetNumberOfColors.length; c++) {
+					long size = SizeEstimator.estimateSize((long) (firstFrameSizes[s][c]/numberOfSamples), (long) (followingFrameSizes[s][c][d]/numberOfSamples), numberOfFrames);
+					// more pixels, frames and bits per pixel carry more of the video
+					double pixelRate = targetScales[s]*targetScales[s]*framePerSecond*Math.log(targetNumberOfColors[c]);
+					if ((size <= budget && pixelRate > bestPixelRate) || (!fits && size < smallestSize)) {
+						fits = size <= budget;
+						bestPixelRate = fits ? pixelRate : -1;
+						smallestSize = size;
+						outputScale = scale*targetScales[s];
+						chosenFramePerSecond = framePerSecond;
+						numberOfColors = targetNumberOfColors[c];
+					}
+				}
+			}
+		}
+		return chosenFramePerSecond;
+	}
+
+	private ByteArrayFrame preprocess(Mat frame, Mat outputFrame, double scale, int frameIndex, boolean measured) {
+		// shrinks the decoded frame first, so the text is drawn and the pixels are copied at the output resolution only
+		long startTime = measured ? System.nanoTime() : 0;
+		Mat image = frame;
+		if (scale != 1) {
+			// area interpolation averages every source pixel, so small outputs do not alias
+			Imgproc.resize(frame, outputFrame, new Size(Math.max(1, (int) (frame.cols()*scale)), Math.max(1, (int) (frame.rows()*scale))), 0, 0, Imgproc.INTER_AREA);
+			image = outputFrame;
+		}
+		long resizedTime = measured ? System.nanoTime() : 0;
+		// the text looks the same as if it were drawn before resizing
+		double fontScale = 3*scale;
+		int thickness = Math.max(1, (int) Math.round(3*scale));
+		addTextToImage(image, new Point((double)image.cols()*3/4, (double)image.rows()*3/4), new Scalar(255, 255, 255), fontScale, thickness);
+
+		// the flat BGR bytes go straight to the encoder, which owns them from now on
+		byte[] pixels = new byte[image.rows()*image.cols()*3];
+		image.get(0, 0, pixels);
+		if (measured) {
+			long resizeNanos = resizedTime - startTime;
+			long overlayNanos = System.nanoTime() - resizedTime; // including the copy out of the image
+			if (listener != null) {
+				listener.framePreprocessed(frameIndex, resizeNanos, overlayNanos);
+			}
+			EncoderEvents.stageCompleted("resize", frameIndex, resizeNanos);
+			EncoderEvents.stageCompleted("overlay", frameIndex, overlayNanos);
+		}
+		return new ByteArrayFrame(pixels, image.cols(), image.rows());
+	}
+
+	private static boolean isRegularSample(int frameIndex, double regularSampleRatio) {
+		// whether the frame is the first sampled at or after one of the regular output times
+		final double tolerance = 1e-9;
+		return Math.floor(frameIndex * regularSampleRatio + tolerance) != Math.floor((frameIndex - 1) * regularSampleRatio + tolerance);
+	}
+
+	private void waitForStage(Future<?> stage) throws IOException, InterruptedException {
+		try {
+			stage.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		}
+	}
+
+	private void releaseFrames(BlockingQueue<Mat> frames) {
+		for (Mat frame = frames.poll(); frame != null; frame = frames.poll()) {
+			frame.release();
+		}
+	}
+
+	protected void addTextToImage(Mat image, Point position, Scalar color, double fontScale, int thickness) {
+		if (text != null) {
+			Imgproc.putText(image, text, position, Core.FONT_HERSHEY_PLAIN, fontScale, color, thickness);
+		}
+	}
+}
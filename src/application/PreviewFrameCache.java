@@ -0,0 +1,205 @@
+package application;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.videoio.VideoCapture;
+import org.opencv.videoio.Videoio;
+
+public class PreviewFrameCache {
+
+	// recently decoded frames at preview size, keyed by frame number,
+	// so scrubbing and looping the preview do not decode the same frames again
+
+	private final int maximumForwardSkip = 30; // shorter gaps are grabbed over instead of seeking
+
+	private VideoCapture capture; // its own, so prefetching never moves the position of another reader
+	private int position = 0; // the frame number the next read returns
+	private double framePerSecond;
+	private int totalFrameCount;
+	private double scale; // preview size relative to the video
+	private Size frameSize; // of the preview
+	private Mat decodedFrame = new Mat();
+	private Mat previewFrame = new Mat();
+
+	private long capacityInBytes;
+	private long sizeInBytes = 0;
+	private LinkedHashMap<Integer, CachedFrame> frames = new LinkedHashMap<Integer, CachedFrame>(64, 0.75f, true); // in access order
+
+	private ExecutorService prefetcher;
+	private AtomicInteger prefetchGeneration = new AtomicInteger(); // a newer request abandons the older ones
+
+	public PreviewFrameCache(String fileName, double maxWidth, double maxHeight, long capacityInBytes) {
+		capture = new VideoCapture(fileName);
+		if (!capture.isOpened()) {
+			throw new IllegalArgumentException("Cannot open " + fileName);
+		}
+		framePerSecond = capture.get(Videoio.CAP_PROP_FPS);
+		totalFrameCount = (int) capture.get(Videoio.CAP_PROP_FRAME_COUNT);
+		double width = capture.get(Videoio.CAP_PROP_FRAME_WIDTH);
+		double height = capture.get(Videoio.CAP_PROP_FRAME_HEIGHT);
+		scale = Math.min(1, Math.min(maxWidth / width, maxHeight / height));
+		frameSize = new Size((int) (width*scale), (int) (height*scale));
+		this.capacityInBytes = capacityInBytes;
+
+		prefetcher = Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "preview prefetcher");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	public double getScale() {
+		return scale;
+	}
+
+	public Size getFrameSize() {
+		return frameSize;
+	}
+
+	public boolean getFrame(int frameNumber, Mat frame) {
+		// copies the frame into the given image, decoding it first if needed, returns false if it cannot be decoded
+		if (getCachedFrame(frameNumber, frame)) {
+			return true;
+		}
+		CachedFrame cachedFrame = decode(frameNumber);
+		if (cachedFrame == null) {
+			return false;
+		}
+		copy(cachedFrame, frame);
+		return true;
+	}
+
+	public boolean getCachedFrame(int frameNumber, Mat frame) {
+		// copies the frame into the given image only if it is cached, never decodes
+		CachedFrame cachedFrame;
+		synchronized (frames) {
+			cachedFrame = frames.get(frameNumber);
+		}
+		if (cachedFrame == null) {
+			return false;
+		}
+		copy(cachedFrame, frame);
+		return true;
+	}
+
+	public void prefetch(int lowFrameNumber, int highFrameNumber) {
+		// decodes about a second after the low handle, where the preview starts, and before the high handle, where it loops
+		int generation = prefetchGeneration.incrementAndGet();
+		int count = (int) Math.ceil(framePerSecond);
+		prefetcher.execute(() -> {
+			prefetchRange(lowFrameNumber, Math.min(lowFrameNumber + count, highFrameNumber), generation);
+			prefetchRange(Math.max(highFrameNumber - count, lowFrameNumber), highFrameNumber, generation);
+		});
+	}
+
+	public void close() {
+		prefetchGeneration.incrementAndGet();
+		prefetcher.shutdownNow();
+		synchronized (capture) {
+			capture.release();
+			decodedFrame.release();
+			previewFrame.release();
+		}
+		synchronized (frames) {
+			frames.clear();
+			sizeInBytes = 0;
+		}
+	}
+
+	private void copy(CachedFrame cachedFrame, Mat frame) {
+		frame.create(cachedFrame.height, cachedFrame.width, CvType.CV_8UC3);
+		frame.put(0, 0, cachedFrame.pixels);
+	}
+
+	private void prefetchRange(int firstFrameNumber, int lastFrameNumber, int generation) {
+		for (int frameNumber = firstFrameNumber; frameNumber < lastFrameNumber; frameNumber++) {
+			if (prefetchGeneration.get() != generation) {
+				return;
+			}
+			boolean cached;
+			synchronized (frames) {
+				cached = frames.containsKey(frameNumber);
+			}
+			if (!cached && decode(frameNumber) == null) {
+				return;
+			}
+		}
+	}
+
+	private CachedFrame decode(int frameNumber) {
+		synchronized (capture) {
+			if (frameNumber < 0 || frameNumber >= totalFrameCount || !capture.isOpened()) {
+				return null;
+			}
+			if (frameNumber < position || frameNumber - position > maximumForwardSkip) {
+				capture.set(Videoio.CAP_PROP_POS_FRAMES, frameNumber);
+				position = frameNumber;
+			}
+			while (position < frameNumber) {
+				if (!capture.grab()) {
+					return null;
+				}
+				position++;
+			}
+			if (!capture.read(decodedFrame)) {
+				return null;
+			}
+			position++;
+
+			Mat image = decodedFrame;
+			if (scale < 1) {
+				Imgproc.resize(decodedFrame, previewFrame, frameSize, 0, 0, Imgproc.INTER_AREA);
+				image = previewFrame;
+			}
+			byte[] pixels = new byte[image.rows()*image.cols()*3];
+			image.get(0, 0, pixels);
+			CachedFrame cachedFrame = new CachedFrame(pixels, image.cols(), image.rows());
+			put(frameNumber, cachedFrame);
+			return cachedFrame;
+		}
+	}
+
+	private void put(int frameNumber, CachedFrame cachedFrame) {
+		synchronized (frames) {
+			CachedFrame oldFrame = frames.put(frameNumber, cachedFrame);
+			if (oldFrame != null) {
+				sizeInBytes -= oldFrame.pixels.length;
+			}
+			sizeInBytes += cachedFrame.pixels.length;
+
+			// evict the least recently used frames
+			Iterator<Map.Entry<Integer, CachedFrame>> iterator = frames.entrySet().iterator();
+			while (sizeInBytes > capacityInBytes && iterator.hasNext()) {
+				CachedFrame evictedFrame = iterator.next().getValue();
+				if (evictedFrame == cachedFrame) {
+					break;
+				}
+				sizeInBytes -= evictedFrame.pixels.length;
+				iterator.remove();
+			}
+		}
+	}
+
+	private static class CachedFrame {
+		// a preview frame in packed BGR
+
+		final byte[] pixels;
+		final int width;
+		final int height;
+
+		CachedFrame(byte[] pixels, int width, int height) {
+			this.pixels = pixels;
+			this.width = width;
+			this.height = height;
+		}
+	}
+}
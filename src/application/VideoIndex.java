@@ -0,0 +1,221 @@
+package application;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.videoio.VideoCapture;
+import org.opencv.videoio.Videoio;
+
+public class VideoIndex {
+
+	// the timestamp of every frame and a strip of thumbnails of a video, built by one pass over the file
+	// and cached next to it, so reopening the same file does not decode it again
+
+	private static final int magicNumber = 0x4D454D49; // "MEMI"
+	private static final int version = 1;
+	private static final int maximumNumberOfThumbnails = 200;
+
+	private long fileSize; // of the video, to tell whether the cache is stale
+	private long lastModified;
+	private double[] timestamps; // in milliseconds, one per frame
+	private int thumbnailInterval; // in frames
+	private int thumbnailWidth;
+	private int thumbnailHeight;
+	private byte[][] thumbnails; // in packed BGR
+
+	private VideoIndex() {
+	}
+
+	public static VideoIndex loadOrBuild(File video, int thumbnailHeight) throws IOException {
+		VideoIndex index = load(video);
+		if (index == null) {
+			index = build(video, thumbnailHeight);
+			try {
+				index.save(video);
+			} catch (IOException e) {
+				// the directory may be read only, the index is simply rebuilt next time
+				getIndexFile(video).delete();
+			}
+		}
+		return index;
+	}
+
+	public static VideoIndex load(File video) {
+		// returns null if there is no up-to-date index of the video
+		File indexFile = getIndexFile(video);
+		if (!indexFile.isFile()) {
+			return null;
+		}
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+			if (input.readInt() != magicNumber || input.readInt() != version) {
+				return null;
+			}
+			VideoIndex index = new VideoIndex();
+			index.fileSize = input.readLong();
+			index.lastModified = input.readLong();
+			if (index.fileSize != video.length() || index.lastModified != video.lastModified()) {
+				return null;
+			}
+			// every count is checked against the bytes left in the file before anything is allocated,
+			// so a corrupt count makes the index stale instead of failing the allocation
+			long remainingBytes = indexFile.length() - 4 - 4 - 8 - 8 - 4;
+			int numberOfTimestamps = input.readInt();
+			if (numberOfTimestamps < 1 || numberOfTimestamps > remainingBytes / 8) {
+				return null;
+			}
+			index.timestamps = new double[numberOfTimestamps];
+			for (int i = 0; i < index.timestamps.length; i++) {
+				index.timestamps[i] = input.readDouble();
+			}
+			remainingBytes -= 8L*numberOfTimestamps + 4 + 4 + 4 + 4;
+			index.thumbnailInterval = input.readInt();
+			index.thumbnailWidth = input.readInt();
+			index.thumbnailHeight = input.readInt();
+			int numberOfThumbnails = input.readInt();
+			if (index.thumbnailInterval < 1 || index.thumbnailWidth < 1 || index.thumbnailHeight < 1
+					|| (long) index.thumbnailWidth*index.thumbnailHeight > Math.min(remainingBytes, Integer.MAX_VALUE) / 3) {
+				return null;
+			}
+			int thumbnailBytes = index.thumbnailWidth*index.thumbnailHeight*3;
+			if (numberOfThumbnails < 0 || numberOfThumbnails > remainingBytes / thumbnailBytes) {
+				return null;
+			}
+			index.thumbnails = new byte[numberOfThumbnails][thumbnailBytes];
+			for (byte[] thumbnail : index.thumbnails) {
+				input.readFully(thumbnail);
+			}
+			return index;
+		} catch (IOException e) {
+			return null; // a truncated or foreign file is rebuilt
+		}
+	}
+
+	public static VideoIndex build(File video, int thumbnailHeight) throws IOException {
+		VideoCapture capture = new VideoCapture(video.getAbsolutePath());
+		Mat frame = new Mat();
+		Mat thumbnail = new Mat();
+		try {
+			if (!capture.isOpened()) {
+				throw new IOException("Cannot open " + video);
+			}
+			VideoIndex index = new VideoIndex();
+			index.fileSize = video.length();
+			index.lastModified = video.lastModified();
+			double framePerSecond = capture.get(Videoio.CAP_PROP_FPS);
+			int expectedFrameCount = Math.max(1, (int) capture.get(Videoio.CAP_PROP_FRAME_COUNT));
+			index.thumbnailInterval = (expectedFrameCount + maximumNumberOfThumbnails - 1) / maximumNumberOfThumbnails;
+			double scale = Math.min(1, (double) thumbnailHeight / capture.get(Videoio.CAP_PROP_FRAME_HEIGHT));
+			index.thumbnailWidth = Math.max(1, (int) (capture.get(Videoio.CAP_PROP_FRAME_WIDTH)*scale));
+			index.thumbnailHeight = Math.max(1, (int) (capture.get(Videoio.CAP_PROP_FRAME_HEIGHT)*scale));
+
+			// grabbing skips the color conversion of the frames that do not become thumbnails
+			double[] timestamps = new double[expectedFrameCount];
+			byte[][] thumbnails = new byte[(expectedFrameCount + index.thumbnailInterval - 1) / index.thumbnailInterval][];
+			int frameCount = 0;
+			while (capture.grab()) {
+				if (frameCount == timestamps.length) { // the container may underestimate
+					timestamps = Arrays.copyOf(timestamps, timestamps.length*2);
+				}
+				double timestamp = capture.get(Videoio.CAP_PROP_POS_MSEC);
+				if (timestamp <= 0 && frameCount > 0) { // the backend does not report timestamps
+					timestamp = frameCount*1000/framePerSecond;
+				}
+				timestamps[frameCount] = timestamp;
+
+				if (frameCount % index.thumbnailInterval == 0 && capture.retrieve(frame)) {
+					int thumbnailIndex = frameCount / index.thumbnailInterval;
+					if (thumbnailIndex == thumbnails.length) {
+						thumbnails = Arrays.copyOf(thumbnails, thumbnails.length*2);
+					}
+					Imgproc.resize(frame, thumbnail, new Size(index.thumbnailWidth, index.thumbnailHeight), 0, 0, Imgproc.INTER_AREA);
+					thumbnails[thumbnailIndex] = new byte[index.thumbnailWidth*index.thumbnailHeight*3];
+					thumbnail.get(0, 0, thumbnails[thumbnailIndex]);
+				}
+				frameCount++;
+			}
+			if (frameCount == 0) {
+				throw new IOException("No frames could be read from " + video);
+			}
+			index.timestamps = Arrays.copyOf(timestamps, frameCount);
+			int numberOfThumbnails = (frameCount + index.thumbnailInterval - 1) / index.thumbnailInterval;
+			index.thumbnails = Arrays.copyOf(thumbnails, numberOfThumbnails);
+			for (int i = 0; i < numberOfThumbnails; i++) {
+				if (index.thumbnails[i] == null) { // a frame that could not be retrieved is shown black
+					index.thumbnails[i] = new byte[index.thumbnailWidth*index.thumbnailHeight*3];
+				}
+			}
+			return index;
+		} finally {
+			frame.release();
+			thumbnail.release();
+			capture.release();
+		}
+	}
+
+	public void save(File video) throws IOException {
+		try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(getIndexFile(video))))) {
+			output.writeInt(magicNumber);
+			output.writeInt(version);
+			output.writeLong(fileSize);
+			output.writeLong(lastModified);
+			output.writeInt(timestamps.length);
+			for (double timestamp : timestamps) {
+				output.writeDouble(timestamp);
+			}
+			output.writeInt(thumbnailInterval);
+			output.writeInt(thumbnailWidth);
+			output.writeInt(thumbnailHeight);
+			output.writeInt(thumbnails.length);
+			for (byte[] thumbnail : thumbnails) {
+				output.write(thumbnail);
+			}
+		}
+	}
+
+	public int getFrameCount() {
+		return timestamps.length;
+	}
+
+	public double getTimestamp(int frameNumber) {
+		return timestamps[Math.max(0, Math.min(frameNumber, timestamps.length - 1))];
+	}
+
+	public int getFrameNumber(double timeInMilliSeconds) {
+		// the frame shown at that time, i.e. the last one starting no later
+		int position = Arrays.binarySearch(timestamps, timeInMilliSeconds);
+		if (position < 0) {
+			position = -position - 2;
+		}
+		return Math.max(0, position);
+	}
+
+	public Size getThumbnailSize() {
+		return new Size(thumbnailWidth, thumbnailHeight);
+	}
+
+	public boolean getThumbnail(int frameNumber, Mat thumbnail) {
+		// copies the thumbnail closest before the frame into the given image
+		int thumbnailIndex = Math.max(0, frameNumber) / thumbnailInterval;
+		if (thumbnailIndex >= thumbnails.length) {
+			return false;
+		}
+		thumbnail.create(thumbnailHeight, thumbnailWidth, CvType.CV_8UC3);
+		thumbnail.put(0, 0, thumbnails[thumbnailIndex]);
+		return true;
+	}
+
+	private static File getIndexFile(File video) {
+		return new File(video.getAbsolutePath() + ".index");
+	}
+}
@@ -0,0 +1,50 @@
+package encoder;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.Raster;
+
+public class BufferedImageFrame implements RasterFrame {
+	
+	// an AWT image, a whole TYPE_3BYTE_BGR image is passed to the encoder without a copy
+	
+	private final BufferedImage image;
+	
+	public BufferedImageFrame(BufferedImage image) {
+		this.image = image;
+	}
+	
+	@Override
+	public int getWidth() {
+		return image.getWidth();
+	}
+	
+	@Override
+	public int getHeight() {
+		return image.getHeight();
+	}
+	
+	@Override
+	public byte[] getBGRPixels() {
+		int width = image.getWidth(), height = image.getHeight();
+		if (image.getType() == BufferedImage.TYPE_3BYTE_BGR) {
+			Raster raster = image.getRaster();
+			byte[] data = ((DataBufferByte) raster.getDataBuffer()).getData();
+			// not a sub-image of a larger one
+			if (raster.getSampleModel() instanceof PixelInterleavedSampleModel && raster.getSampleModelTranslateX() == 0 && raster.getSampleModelTranslateY() == 0
+					&& ((PixelInterleavedSampleModel) raster.getSampleModel()).getScanlineStride() == width*3 && data.length == width*height*3) {
+				return data; // the bytes of TYPE_3BYTE_BGR are in BGR order already
+			}
+		}
+		int[] argbPixels = image.getRGB(0, 0, width, height, null, 0, width);
+		byte[] pixels = new byte[width*height*3];
+		for (int i = 0; i < argbPixels.length; i++) {
+			int argb = argbPixels[i];
+			pixels[i*3] = (byte) argb;
+			pixels[i*3+1] = (byte) (argb >> 8);
+			pixels[i*3+2] = (byte) (argb >> 16);
+		}
+		return pixels;
+	}
+}
@@ -0,0 +1,56 @@
+package encoder;
+
+public class ByteArrayFrame implements RasterFrame {
+	
+	// packed pixels in a Java array, BGR pixels are passed to the encoder without a copy
+	
+	private final byte[] pixels;
+	private final int width;
+	private final int height;
+	private final PixelOrder pixelOrder;
+	
+	public ByteArrayFrame(byte[] pixels, int width, int height) {
+		this(pixels, width, height, PixelOrder.BGR);
+	}
+	
+	public ByteArrayFrame(byte[] pixels, int width, int height, PixelOrder pixelOrder) {
+		if (pixels.length < width*height*3) {
+			throw new IllegalArgumentException("A " + width + "x" + height + " frame needs " + width*height*3 + " bytes, got " + pixels.length);
+		}
+		this.pixels = pixels;
+		this.width = width;
+		this.height = height;
+		this.pixelOrder = pixelOrder;
+	}
+	
+	@Override
+	public int getWidth() {
+		return width;
+	}
+	
+	@Override
+	public int getHeight() {
+		return height;
+	}
+	
+	@Override
+	public byte[] getBGRPixels() {
+		if (pixelOrder == PixelOrder.BGR && pixels.length == width*height*3) {
+			return pixels;
+		}
+		byte[] bgrPixels = new byte[width*height*3];
+		System.arraycopy(pixels, 0, bgrPixels, 0, bgrPixels.length);
+		if (pixelOrder == PixelOrder.RGB) {
+			swapRedAndBlue(bgrPixels);
+		}
+		return bgrPixels;
+	}
+	
+	static void swapRedAndBlue(byte[] pixels) {
+		for (int i = 0; i + 2 < pixels.length; i += 3) {
+			byte first = pixels[i];
+			pixels[i] = pixels[i+2];
+			pixels[i+2] = first;
+		}
+	}
+}
@@ -0,0 +1,44 @@
+package encoder;
+
+import java.nio.ByteBuffer;
+
+public class ByteBufferFrame implements RasterFrame {
+	
+	// packed pixels in a heap or direct buffer, from its position on, e.g. frames decoded by native code
+	
+	private final ByteBuffer buffer;
+	private final int width;
+	private final int height;
+	private final PixelOrder pixelOrder;
+	
+	public ByteBufferFrame(ByteBuffer buffer, int width, int height, PixelOrder pixelOrder) {
+		if (buffer.remaining() < width*height*3) {
+			throw new IllegalArgumentException("A " + width + "x" + height + " frame needs " + width*height*3 + " bytes, got " + buffer.remaining());
+		}
+		this.buffer = buffer;
+		this.width = width;
+		this.height = height;
+		this.pixelOrder = pixelOrder;
+	}
+	
+	@Override
+	public int getWidth() {
+		return width;
+	}
+	
+	@Override
+	public int getHeight() {
+		return height;
+	}
+	
+	@Override
+	public byte[] getBGRPixels() {
+		// one bulk copy, the buffer's own position is left alone
+		byte[] pixels = new byte[width*height*3];
+		buffer.duplicate().get(pixels);
+		if (pixelOrder == PixelOrder.RGB) {
+			ByteArrayFrame.swapRedAndBlue(pixels);
+		}
+		return pixels;
+	}
+}
@@ -0,0 +1,42 @@
+package encoder;
+
+public class ColorHistogram {
+
+	// the number of pixels in each cell of an RGB444 grid, compact enough to keep one per palette
+	// and to compare with every frame
+
+	private static final int bitsPerChannel = 4;
+	private static final int shift = 8 - bitsPerChannel;
+
+	private final int[] counts = new int[1 << (3 * bitsPerChannel)];
+	private int numberOfPixels = 0;
+
+	public ColorHistogram(byte[] pixels, boolean[] included) {
+		// pixels are packed BGR, included tells which ones to count, null for all of them
+		for (int i = 0, offset = 0; offset < pixels.length; i++, offset += 3) {
+			if (included != null && !included[i]) {
+				continue;
+			}
+			numberOfPixels++;
+			int blue = (pixels[offset] & 0xFF) >> shift;
+			int green = (pixels[offset+1] & 0xFF) >> shift;
+			int red = (pixels[offset+2] & 0xFF) >> shift;
+			counts[(red << (2*bitsPerChannel)) | (green << bitsPerChannel) | blue]++;
+		}
+	}
+
+	public double getUncoveredShare(ColorHistogram covering) {
+		// the share of these pixels in cells where the other histogram has none, from 0 to 1,
+		// e.g. how much of a changed region a palette built from the other pixels would have to approximate from afar
+		if (numberOfPixels == 0) {
+			return 0;
+		}
+		int uncoveredPixels = 0;
+		for (int cell = 0; cell < counts.length; cell++) {
+			if (counts[cell] != 0 && covering.counts[cell] == 0) {
+				uncoveredPixels += counts[cell];
+			}
+		}
+		return (double) uncoveredPixels / numberOfPixels;
+	}
+}
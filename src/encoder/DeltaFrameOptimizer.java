@@ -0,0 +1,70 @@
+package encoder;
+
+public class DeltaFrameOptimizer {
+	
+	// reduces each frame to the bounding rectangle of the pixels that changed since the previous frame,
+	// the unchanged pixels inside the rectangle are left transparent
+	
+	private final int tolerance; // the largest per-channel difference still considered unchanged
+	private byte[] reference; // the source pixels currently on the screen
+	private int referenceWidth;
+	private int referenceHeight;
+	
+	public DeltaFrameOptimizer(int tolerance) {
+		if (tolerance < 0 || tolerance > 255) {
+			throw new IllegalArgumentException("tolerance must be between 0 and 255: " + tolerance);
+		}
+		this.tolerance = tolerance;
+	}
+	
+	public FrameRegion optimize(byte[] pixels, int width, int height) {
+		if (reference == null || width != referenceWidth || height != referenceHeight) {
+			// nothing to compare with, the whole frame is written
+			reference = pixels.clone();
+			referenceWidth = width;
+			referenceHeight = height;
+			return new FrameRegion(0, 0, width, height, pixels, null);
+		}
+		
+		// find the bounding rectangle of the changed pixels
+		int minX = width, minY = height, maxX = -1, maxY = -1;
+		for (int y = 0, offset = 0; y < height; y++) {
+			for (int x = 0; x < width; x++, offset += 3) {
+				if (isChanged(pixels, offset)) {
+					minX = Math.min(minX, x);
+					maxX = Math.max(maxX, x);
+					minY = Math.min(minY, y);
+					maxY = y;
+				}
+			}
+		}
+		if (maxX < 0) { // nothing changed, a single transparent pixel keeps the frame
+			return new FrameRegion(0, 0, 1, 1, new byte[] {pixels[0], pixels[1], pixels[2]}, new boolean[1]);
+		}
+		
+		// cut out the rectangle, and remember what is on the screen from now on
+		int regionWidth = maxX - minX + 1;
+		int regionHeight = maxY - minY + 1;
+		byte[] regionPixels = new byte[regionWidth*regionHeight*3];
+		boolean[] opaque = new boolean[regionWidth*regionHeight];
+		for (int y = 0, index = 0; y < regionHeight; y++) {
+			int offset = ((minY + y)*width + minX)*3;
+			System.arraycopy(pixels, offset, regionPixels, index*3, regionWidth*3);
+			for (int x = 0; x < regionWidth; x++, index++, offset += 3) {
+				if (isChanged(pixels, offset)) {
+					opaque[index] = true;
+					reference[offset] = pixels[offset];
+					reference[offset+1] = pixels[offset+1];
+					reference[offset+2] = pixels[offset+2];
+				}
+			}
+		}
+		return new FrameRegion(minX, minY, regionWidth, regionHeight, regionPixels, opaque);
+	}
+	
+	private boolean isChanged(byte[] pixels, int offset) {
+		return Math.abs((pixels[offset] & 0xFF) - (reference[offset] & 0xFF)) > tolerance
+				|| Math.abs((pixels[offset+1] & 0xFF) - (reference[offset+1] & 0xFF)) > tolerance
+				|| Math.abs((pixels[offset+2] & 0xFF) - (reference[offset+2] & 0xFF)) > tolerance;
+	}
+}
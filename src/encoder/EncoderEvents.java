@@ -0,0 +1,47 @@
+package encoder;
+
+public final class EncoderEvents {
+	
+	// emits the measurements as Java Flight Recorder events, when the JVM has JFR and a recording enables them,
+	// so exports can be profiled with e.g. -XX:StartFlightRecording without attaching a debugger
+	
+	// the event classes live in the jfr source folder, which needs jdk.jfr (JDK 11, or 8u262 and later) to compile,
+	// the encoder itself builds on any Java 8 and simply emits nothing without them
+	
+	interface Sink {
+		boolean isEnabled();
+		void frameEncoded(FrameMetrics metrics);
+		void stageCompleted(String stage, int frameIndex, long nanos);
+	}
+	
+	private static final Sink sink = loadSink();
+	
+	private EncoderEvents() {
+	}
+	
+	public static boolean isEnabled() {
+		return sink != null && sink.isEnabled();
+	}
+	
+	public static void frameEncoded(FrameMetrics metrics) {
+		if (sink != null) {
+			sink.frameEncoded(metrics);
+		}
+	}
+	
+	public static void stageCompleted(String stage, int frameIndex, long nanos) {
+		if (sink != null) {
+			sink.stageCompleted(stage, frameIndex, nanos);
+		}
+	}
+	
+	private static Sink loadSink() {
+		// null when the jfr source folder was left out of the build, or the JVM has no jdk.jfr
+		try {
+			Class.forName("jdk.jfr.Event");
+			return (Sink) Class.forName("encoder.FlightRecorderSink").getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException | LinkageError e) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,8 @@
+package encoder;
+
+public interface EncoderListener {
+	
+	// called on the thread that writes the frames, in frame order, right after each frame is written
+	void frameEncoded(FrameMetrics metrics);
+	
+}
@@ -0,0 +1,35 @@
+package encoder;
+
+public class FrameMetrics {
+	
+	// what it took to encode one frame, the times are in nanoseconds
+	
+	public final int frameIndex;
+	public final int width; // of the region written, smaller than the frame with delta encoding
+	public final int height;
+	public final int numberOfColors; // used in the color table
+	public final int compressedBytes; // of LZW image data, including the sub-block framing
+	public final long deltaNanos; // comparing with the previous frame
+	public final long quantizeNanos; // building or mapping onto the color table
+	public final long compressNanos; // LZW
+	public final long writeNanos;
+	public final long allocatedBytes; // by the thread that quantized and compressed the frame, -1 if the JVM cannot tell
+	
+	public FrameMetrics(int frameIndex, int width, int height, int numberOfColors, int compressedBytes, long deltaNanos, long quantizeNanos, long compressNanos, long writeNanos, long allocatedBytes) {
+		this.frameIndex = frameIndex;
+		this.width = width;
+		this.height = height;
+		this.numberOfColors = numberOfColors;
+		this.compressedBytes = compressedBytes;
+		this.deltaNanos = deltaNanos;
+		this.quantizeNanos = quantizeNanos;
+		this.compressNanos = compressNanos;
+		this.writeNanos = writeNanos;
+		this.allocatedBytes = allocatedBytes;
+	}
+	
+	public double getCompressionRatio() {
+		// one byte per color index before compression
+		return compressedBytes == 0 ? 0 : (double) width*height / compressedBytes;
+	}
+}
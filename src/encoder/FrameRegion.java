@@ -0,0 +1,22 @@
+package encoder;
+
+public class FrameRegion {
+	
+	// a rectangle of a frame, as written by one image descriptor
+	
+	public final int left;
+	public final int top;
+	public final int width;
+	public final int height;
+	public final byte[] pixels; // packed BGR, width*height pixels
+	public final boolean[] opaque; // false where the previous frame shows through, null if every pixel is opaque
+	
+	public FrameRegion(int left, int top, int width, int height, byte[] pixels, boolean[] opaque) {
+		this.left = left;
+		this.top = top;
+		this.width = width;
+		this.height = height;
+		this.pixels = pixels;
+		this.opaque = opaque;
+	}
+}
@@ -0,0 +1,55 @@
+package encoder;
+
+public class FrameSignature {
+
+	// the mean color of every 8x8 block of a frame, cheap to compare, and insensitive to the noise of single pixels,
+	// while a single pixel that changes completely still moves the mean of its block by 4
+
+	private static final int blockSize = 8;
+
+	private final int width;
+	private final int height;
+	private final int blocksPerRow;
+	private final int[] sums; // per block and channel
+
+	public FrameSignature(byte[] pixels, int width, int height) {
+		// pixels are packed BGR
+		this.width = width;
+		this.height = height;
+		blocksPerRow = (width + blockSize - 1) / blockSize;
+		int blocksPerColumn = (height + blockSize - 1) / blockSize;
+		sums = new int[blocksPerRow*blocksPerColumn*3];
+		for (int y = 0, offset = 0; y < height; y++) {
+			int rowBlock = (y / blockSize) * blocksPerRow;
+			for (int x = 0; x < width; x++, offset += 3) {
+				int block = (rowBlock + x / blockSize) * 3;
+				sums[block] += pixels[offset] & 0xFF;
+				sums[block+1] += pixels[offset+1] & 0xFF;
+				sums[block+2] += pixels[offset+2] & 0xFF;
+			}
+		}
+	}
+
+	public double getDifference(FrameSignature other) {
+		// the largest difference of a block mean in any channel, from 0 to 255, infinite if the sizes differ
+		if (width != other.width || height != other.height) {
+			return Double.POSITIVE_INFINITY;
+		}
+		double difference = 0;
+		for (int block = 0; block < sums.length / 3; block++) {
+			int maximumSum = 0;
+			for (int channel = 0; channel < 3; channel++) {
+				maximumSum = Math.max(maximumSum, Math.abs(sums[block*3 + channel] - other.sums[block*3 + channel]));
+			}
+			difference = Math.max(difference, (double) maximumSum / getBlockArea(block));
+		}
+		return difference;
+	}
+
+	private int getBlockArea(int block) {
+		// the blocks on the right and bottom edges may be cut off
+		int left = (block % blocksPerRow) * blockSize;
+		int top = (block / blocksPerRow) * blockSize;
+		return Math.min(blockSize, width - left) * Math.min(blockSize, height - top);
+	}
+}
@@ -0,0 +1,590 @@
+package encoder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+import org.opencv.core.Mat;
+
+public class GIFStreamEncoder {
+
+	// writes a GIF frame by frame, each frame is written as soon as it is compressed,
+	// so memory use does not grow with the number of frames
+
+	private final int targetBitsPerPixel = 8;
+	private final int minimumBandHeight = 16; // lower bands cost more in headers and lost LZW context than they save
+
+	private WritableByteChannel channel;
+	private Quantizer quantizer = QuantizationTier.BALANCED.createQuantizer(); // MedianCutQuantizer is exact, but far slower for about the same quality
+	private ColorTable globalColorTable; // null to give every frame its own color table
+	private DeltaFrameOptimizer deltaFrameOptimizer; // null to write every frame in full
+	private double mergeTolerance = -1; // negative to write every frame, even an unchanged one
+	private FrameSignature lastSignature; // of the last frame written, not of the ones merged into it
+	private double paletteTolerance = -1; // negative to quantize every frame on its own
+	private CompletableFuture<ColorTable> palette; // reused while the frames look like the one it was built from
+	private ColorHistogram paletteHistogram; // of the pixels it was built from
+	private Executor executor; // null to encode on the calling thread
+	private int numberOfBands = 1; // per frame, see setBands
+	private int maxFramesInFlight = 2 * Runtime.getRuntime().availableProcessors();
+	private Deque<PendingFrame> framesInFlight = new ArrayDeque<PendingFrame>(); // the newest one is kept until its delay is final
+	private boolean started = false; // a frame has been added, so the settings are fixed
+	private boolean headerWritten = false; // with the first frame, which may lend its colors to the screen
+	private int screenWidth;
+	private int screenHeight;
+	private boolean finished = false;
+	private EncoderListener listener; // null to skip all measurements unless a JFR recording wants them
+	private int numberOfFramesAdded = 0;
+
+	public GIFStreamEncoder(WritableByteChannel channel) {
+		this.channel = channel;
+	}
+
+	public GIFStreamEncoder(OutputStream outputStream) {
+		this(Channels.newChannel(outputStream));
+	}
+
+	public void setQuantizer(Quantizer quantizer) {
+		this.quantizer = quantizer;
+	}
+
+	public void setQuantizationTier(QuantizationTier tier) {
+		quantizer = tier.createQuantizer();
+	}
+
+	public Quantizer getQuantizer() {
+		return quantizer;
+	}
+	
+	public void setGlobalColorTable(ColorTable globalColorTable) {
+		// every frame is mapped onto this table instead of being quantized on its own
+		if (started) {
+			throw new IllegalStateException("The global color table must be set before the first frame");
+		}
+		this.globalColorTable = globalColorTable;
+	}
+
+	public void setDeltaEncoding(boolean enabled, int tolerance) {
+		// write only the rectangle that changed since the previous frame, with the unchanged pixels transparent,
+		// a pixel counts as changed when a channel differs by more than tolerance
+		if (started) {
+			throw new IllegalStateException("Delta encoding must be set before the first frame");
+		}
+		deltaFrameOptimizer = enabled ? new DeltaFrameOptimizer(tolerance) : null;
+	}
+
+	public void setFrameMerging(boolean enabled, double tolerance) {
+		// a frame that looks like the previous one is not written, the previous one is shown longer instead,
+		// a frame looks the same when no 8x8 block changed its mean by more than tolerance in any channel, see FrameSignature
+		if (tolerance < 0) {
+			throw new IllegalArgumentException("tolerance must not be negative: " + tolerance);
+		}
+		mergeTolerance = enabled ? tolerance : -1;
+	}
+
+	public void setPaletteReuse(boolean enabled, double tolerance) {
+		// map a frame onto the color table of an earlier frame instead of quantizing it again, as long as no more than tolerance
+		// of its pixels (from 0 to 1) have colors that were not among those the table was built from, e.g. until the scene changes,
+		// with delta encoding only the changed region is compared, so a small change reuses the table of a full frame,
+		// has no effect with a global color table
+		if (tolerance < 0 || tolerance > 1) {
+			throw new IllegalArgumentException("tolerance must be between 0 and 1: " + tolerance);
+		}
+		if (started) {
+			throw new IllegalStateException("Palette reuse must be set before the first frame");
+		}
+		paletteTolerance = enabled ? tolerance : -1;
+	}
+
+	public void setBands(int numberOfBands) {
+		// split every frame into up to this many horizontal bands, each written as an image of its own with the same colors,
+		// so the bands of one frame are compressed in parallel on the executor,
+		// all bands but the last have no delay, which browsers stretch to a tenth of a second, so it suits still images best
+		if (numberOfBands < 1) {
+			throw new IllegalArgumentException("numberOfBands must be positive: " + numberOfBands);
+		}
+		this.numberOfBands = numberOfBands;
+	}
+
+	public void setExecutor(Executor executor) {
+		// frames are quantized and compressed on the executor, e.g. a ForkJoinPool
+		this.executor = executor;
+	}
+
+	public void setMaxFramesInFlight(int maxFramesInFlight) {
+		// how many frames may wait on the executor before addFrame blocks, besides the newest one
+		if (maxFramesInFlight < 1) {
+			throw new IllegalArgumentException("maxFramesInFlight must be positive: " + maxFramesInFlight);
+		}
+		this.maxFramesInFlight = maxFramesInFlight;
+	}
+
+	public void setListener(EncoderListener listener) {
+		this.listener = listener;
+	}
+
+	public void addFrame(Mat image, short delayInMilliSeconds) throws IOException {
+		// the pixels are copied here, so the caller may release the image when this returns
+		addFrame(new MatFrame(image), delayInMilliSeconds);
+	}
+
+	public void addFrame(RasterFrame frame, short delayInMilliSeconds) throws IOException {
+		// the pixels may be used without a copy, see RasterFrame.getBGRPixels
+		addFrame(frame.getBGRPixels(), frame.getWidth(), frame.getHeight(), delayInMilliSeconds);
+	}
+
+	public void addFrame(byte[] pixels, int width, int height, short delayInMilliSeconds) throws IOException {
+		// pixels are packed BGR, and must not be modified until the frame is written
+		if (finished) {
+			throw new IllegalStateException("The GIF is already finished");
+		}
+		if (!started) { // the first frame decides the screen size
+			screenWidth = width;
+			screenHeight = height;
+			started = true;
+		}
+
+		if (mergeTolerance >= 0) {
+			FrameSignature signature = new FrameSignature(pixels, width, height);
+			if (lastSignature != null && signature.getDifference(lastSignature) <= mergeTolerance) {
+				extendLastFrame(delayInMilliSeconds);
+				return;
+			}
+			lastSignature = signature;
+		}
+
+		// comparing with the previous frame is sequential, but cheap
+		final int frameIndex = numberOfFramesAdded++;
+		final boolean measured = listener != null || EncoderEvents.isEnabled();
+		long startTime = measured ? System.nanoTime() : 0;
+		FrameRegion region;
+		if (deltaFrameOptimizer != null) {
+			region = deltaFrameOptimizer.optimize(pixels, width, height);
+		} else {
+			region = new FrameRegion(0, 0, width, height, pixels, null);
+		}
+		final long deltaNanos = measured ? System.nanoTime() - startTime : 0;
+
+		CompletableFuture<EncodedFrame> encodedFrame;
+		if (paletteTolerance >= 0 && globalColorTable == null) {
+			// the choice is made in frame order, so the output does not depend on the executor
+			ColorHistogram histogram = new ColorHistogram(region.pixels, region.opaque);
+			if (palette != null && histogram.getUncoveredShare(paletteHistogram) <= paletteTolerance) {
+				if (executor == null) {
+					encodedFrame = CompletableFuture.completedFuture(encodeFrame(region, palette.join(), frameIndex, measured, deltaNanos));
+				} else {
+					encodedFrame = palette.thenApplyAsync(reusedPalette -> encodeFrame(region, reusedPalette, frameIndex, measured, deltaNanos), executor);
+				}
+			} else {
+				encodedFrame = encodeFrame(region, frameIndex, measured, deltaNanos);
+				palette = encodedFrame.thenApply(frame -> frame.palette);
+				paletteHistogram = histogram;
+			}
+		} else {
+			encodedFrame = encodeFrame(region, frameIndex, measured, deltaNanos);
+		}
+		framesInFlight.add(new PendingFrame(encodedFrame, delayInMilliSeconds));
+		// but they are written in order, and the newest one may still be shown longer
+		while (framesInFlight.size() > 1 && (framesInFlight.size() > maxFramesInFlight || framesInFlight.peek().encodedFrame.isDone())) {
+			writeOldestFrame();
+		}
+	}
+
+	public void extendLastFrame(int delayInMilliSeconds) {
+		// shows the last frame added longer, instead of adding the same frame again
+		if (finished) {
+			throw new IllegalStateException("The GIF is already finished");
+		}
+		if (framesInFlight.isEmpty()) {
+			throw new IllegalStateException("No frame to extend");
+		}
+		framesInFlight.peekLast().delayInMilliSeconds += delayInMilliSeconds;
+	}
+
+	public void finish() throws IOException {
+		if (finished) {
+			return;
+		}
+		if (!started) {
+			throw new IllegalStateException("No frames were added");
+		}
+		while (!framesInFlight.isEmpty()) {
+			writeOldestFrame();
+		}
+		ByteBuffer buffer = allocate(1);
+		writeTrailer(buffer);
+		writeFully(buffer);
+		finished = true;
+	}
+
+	private CompletableFuture<EncodedFrame> encodeFrame(FrameRegion region, int frameIndex, boolean measured, long deltaNanos) {
+		if (executor == null) {
+			return CompletableFuture.completedFuture(encodeFrame(region, null, frameIndex, measured, deltaNanos));
+		}
+		// the frames can be encoded independently
+		return CompletableFuture.supplyAsync(() -> encodeFrame(region, null, frameIndex, measured, deltaNanos), executor);
+	}
+
+	private EncodedFrame encodeFrame(FrameRegion region, ColorTable palette, int frameIndex, boolean measured, long deltaNanos) {
+		// palette is the color table to map the frame onto, null to quantize it
+		long allocatedBytes = measured ? getAllocatedBytes() : 0;
+		long startTime = measured ? System.nanoTime() : 0;
+		ColorTable colorTable;
+		ColorTable quantizedColorTable; // before an entry is freed for the transparent pixels
+		int transparentIndex = -1;
+		if (region.opaque == null || (globalColorTable != null && globalColorTable.findUnusedEntry() < 0)) {
+			// a full global color table has no room for a transparent entry, the unchanged pixels are just repeated
+			colorTable = quantize(region.pixels, region.width, region.height, palette);
+			quantizedColorTable = colorTable;
+		} else {
+			// only the opaque pixels need colors, one entry is kept free for the transparent ones
+			int numberOfOpaquePixels = 0;
+			for (boolean isOpaque : region.opaque) {
+				if (isOpaque) {
+					numberOfOpaquePixels++;
+				}
+			}
+			byte[] opaquePixels = new byte[numberOfOpaquePixels*3];
+			for (int i = 0, k = 0; i < region.opaque.length; i++) {
+				if (region.opaque[i]) {
+					System.arraycopy(region.pixels, i*3, opaquePixels, k*3, 3);
+					k++;
+				}
+			}
+			ColorTable opaqueColorTable;
+			if (numberOfOpaquePixels == 0) {
+				opaqueColorTable = palette != null ? palette.withImageIndices(new int[0]) : new ColorTable(new ColorTableEntry[ColorTable.colorTableSize], new int[0]);
+				quantizedColorTable = opaqueColorTable;
+			} else {
+				opaqueColorTable = quantize(opaquePixels, numberOfOpaquePixels, 1, palette);
+				quantizedColorTable = opaqueColorTable;
+				if (globalColorTable == null && opaqueColorTable.findUnusedEntry() < 0) {
+					opaqueColorTable = opaqueColorTable.releaseLeastUsedEntry();
+				}
+			}
+			transparentIndex = opaqueColorTable.findUnusedEntry();
+
+			int[] opaqueIndices = opaqueColorTable.getImageIndices();
+			int[] indices = new int[region.opaque.length];
+			for (int i = 0, k = 0; i < indices.length; i++) {
+				indices[i] = region.opaque[i] ? opaqueIndices[k++] : transparentIndex;
+			}
+			colorTable = opaqueColorTable.withImageIndices(indices);
+		}
+		long quantizedTime = measured ? System.nanoTime() : 0;
+		byte[][] compressedBands = compressBands(colorTable.getImageIndices(), region.width, region.height);
+		EncodedFrame encodedFrame = new EncodedFrame(colorTable, compressedBands, region, transparentIndex);
+		encodedFrame.palette = palette != null ? palette : quantizedColorTable;
+		if (measured) {
+			long compressedTime = System.nanoTime();
+			encodedFrame.frameIndex = frameIndex;
+			encodedFrame.deltaNanos = deltaNanos;
+			encodedFrame.quantizeNanos = quantizedTime - startTime;
+			encodedFrame.compressNanos = compressedTime - quantizedTime;
+			encodedFrame.allocatedBytes = allocatedBytes < 0 ? -1 : getAllocatedBytes() - allocatedBytes;
+			encodedFrame.measured = true;
+		}
+		return encodedFrame;
+	}
+
+	private byte[][] compressBands(int[] indices, int width, int height) {
+		// band k holds the rows from k*height/bands up to (k + 1)*height/bands
+		// without an executor the bands would only cost headers and LZW context, and gain nothing
+		int bands = executor == null ? 1 : Math.max(1, Math.min(numberOfBands, height / minimumBandHeight));
+		byte[][] compressedBands = new byte[bands][];
+		List<CompletableFuture<byte[]>> otherBands = new ArrayList<CompletableFuture<byte[]>>(); // of the bands after the first
+		for (int band = 1; band < bands && executor != null; band++) {
+			int start = (band*height/bands)*width;
+			int end = ((band + 1)*height/bands)*width;
+			otherBands.add(CompletableFuture.supplyAsync(() -> compressImageData(indices, start, end), executor));
+		}
+		// the first band, or all of them without an executor, on this thread
+		for (int band = 0; band < bands - otherBands.size(); band++) {
+			compressedBands[band] = compressImageData(indices, (band*height/bands)*width, ((band + 1)*height/bands)*width);
+		}
+		for (int band = 1; band <= otherBands.size(); band++) {
+			compressedBands[band] = otherBands.get(band - 1).join();
+		}
+		return compressedBands;
+	}
+
+	private ColorTable quantize(byte[] pixels, int width, int height, ColorTable palette) {
+		if (globalColorTable != null) {
+			return globalColorTable.remap(pixels, width, height);
+		} else if (palette != null) {
+			return palette.remap(pixels, width, height);
+		} else {
+			return quantizer.quantize(pixels, width, height);
+		}
+	}
+
+	private void writeOldestFrame() throws IOException {
+		PendingFrame frame = framesInFlight.poll();
+		EncodedFrame encodedFrame;
+		try {
+			encodedFrame = frame.encodedFrame.join();
+		} catch (CompletionException e) {
+			// the remaining frames are useless now
+			for (PendingFrame remainingFrame : framesInFlight) {
+				remainingFrame.encodedFrame.cancel(false);
+			}
+			framesInFlight.clear();
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw e;
+		}
+		writeFrame(encodedFrame, frame.delayInMilliSeconds);
+	}
+
+	private void writeFrame(EncodedFrame encodedFrame, int delayInMilliSeconds) throws IOException {
+		long startTime = encodedFrame.measured ? System.nanoTime() : 0;
+		final int colorTableSize = (1 << targetBitsPerPixel) * 3;
+		final int graphicsControlExtensionSize = 8;
+		final int imageDescriptorSize = 10;
+		byte[][] compressedBands = encodedFrame.compressedBands;
+		int bands = compressedBands.length;
+		int compressedBytes = 0;
+		for (byte[] compressedBand : compressedBands) {
+			compressedBytes += compressedBand.length;
+		}
+		ColorTable screenColorTable = globalColorTable;
+		boolean headerWrittenHere = !headerWritten;
+		if (headerWrittenHere && screenColorTable == null && bands > 1) {
+			// the bands of the first frame share its colors through the screen, instead of a copy of them per band
+			screenColorTable = encodedFrame.colorTable;
+		}
+		boolean localColorTable = screenColorTable == null; // the later frames bring their own colors, unless they are shared by all
+		ByteBuffer buffer = allocate((headerWrittenHere ? 6 + 7 + (screenColorTable != null ? colorTableSize : 0) : 0)
+				+ bands*(graphicsControlExtensionSize + imageDescriptorSize + (localColorTable ? colorTableSize : 0)) + compressedBytes);
+		if (headerWrittenHere) {
+			writeHeader(buffer);
+			writeScreenDescriptor(buffer, screenWidth, screenHeight, screenColorTable != null);
+			if (screenColorTable != null) {
+				writeColorTable(buffer, screenColorTable);
+			}
+			headerWritten = true;
+		}
+		for (int band = 0; band < bands; band++) {
+			// the bands appear together, as one frame
+			int bandTop = band*encodedFrame.height/bands;
+			int bandHeight = (band + 1)*encodedFrame.height/bands - bandTop;
+			writeGraphicsControlExtension(buffer, band == bands - 1 ? delayInMilliSeconds : 0, encodedFrame.transparentIndex); // 89a
+			writeImageDescriptor(buffer, encodedFrame.left, encodedFrame.top + bandTop, encodedFrame.width, bandHeight, localColorTable);
+			if (localColorTable) {
+				writeColorTable(buffer, encodedFrame.colorTable);
+			}
+			writeImageData(buffer, compressedBands[band]);
+		}
+		writeFully(buffer);
+
+		if (encodedFrame.measured) {
+			FrameMetrics metrics = new FrameMetrics(encodedFrame.frameIndex, encodedFrame.width, encodedFrame.height, encodedFrame.colorTable.getNumberOfColors(), compressedBytes,
+					encodedFrame.deltaNanos, encodedFrame.quantizeNanos, encodedFrame.compressNanos, System.nanoTime() - startTime, encodedFrame.allocatedBytes);
+			if (listener != null) {
+				listener.frameEncoded(metrics);
+			}
+			EncoderEvents.frameEncoded(metrics);
+		}
+	}
+
+	private static long getAllocatedBytes() {
+		// by the current thread so far, -1 if the JVM cannot tell
+		if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+			if (threadBean.isThreadAllocatedMemorySupported() && threadBean.isThreadAllocatedMemoryEnabled()) {
+				return threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+			}
+		}
+		return -1;
+	}
+
+	private ByteBuffer allocate(int size) {
+		ByteBuffer buffer = ByteBuffer.allocate(size);
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		return buffer;
+	}
+
+	private void writeFully(ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	private void writeHeader(ByteBuffer buffer) {
+		final byte[] signature = {(byte)'G', (byte)'I', (byte)'F'};
+		buffer.put(signature);
+		final byte[] version = {(byte)'8', (byte)'9', (byte)'a'};
+		buffer.put(version);
+	}
+
+	private void writeScreenDescriptor(ByteBuffer buffer, int width, int height, boolean globalColorTable) {
+		final short screenWidth = (short) width;
+		buffer.putShort(screenWidth);
+		final short screenHeight = (short) height;
+		buffer.putShort(screenHeight);
+		byte packed = (byte)0x70; // global color table disabled, 8bit resolution
+		if (globalColorTable) {
+			packed = (byte)0xF7; // 1 111 0 111, global color table enabled, 8bit resolution, sort disabled, 256 entries in the table
+		}
+		buffer.put(packed);
+		final byte backgroundColor = (byte)0; // we are not going to use it
+		buffer.put(backgroundColor);
+		final byte pixelAspectRatio = (byte)0; // we are not going to specify it
+		buffer.put(pixelAspectRatio);
+	}
+
+	private void writeImageDescriptor(ByteBuffer buffer, int imageLeft, int imageTop, int imageWidth, int imageHeight, boolean localColorTable) {
+		byte separator = (byte) 0x2C;
+		buffer.put(separator);
+		short left = (short) imageLeft; // display the image at x=left
+		buffer.putShort(left);
+		short top = (short) imageTop; // display the image at y=top
+		buffer.putShort(top);
+		short width = (short) imageWidth;
+		buffer.putShort(width);
+		short height = (short) imageHeight;
+		buffer.putShort(height);
+		byte packed = (byte) 0x87; // 1 0 0 00 111, local color table enabled, interlace scan disabled, sort disabled, 256 entries in the table
+		if (!localColorTable) {
+			packed = (byte) 0x00; // 0 0 0 00 000, use the global color table
+		}
+		buffer.put(packed);
+	}
+
+	private void writeColorTable(ByteBuffer buffer, ColorTable colorTable) {
+		buffer.put(colorTable.getRawData());
+	}
+
+	private void writeGraphicsControlExtension(ByteBuffer buffer, int delayInMilliSeconds, int transparentIndex) {
+		final byte introducer = (byte) 0x21;
+		buffer.put(introducer);
+		final byte label = (byte) 0xf9;
+		buffer.put(label);
+		final byte blocksize = (byte) 0x04;
+		buffer.put(blocksize);
+		byte packed = (byte) 0x00; // 000 000 0 0
+		if (deltaFrameOptimizer != null) {
+			packed = (byte) 0x04; // 000 001 0 0, do not dispose, the next frame is drawn over this one
+		}
+		if (transparentIndex >= 0) {
+			packed |= (byte) 0x01; // transparent color flag
+		}
+		buffer.put(packed);
+		final short delayTime = (short) Math.min(delayInMilliSeconds / 10, 0xFFFF); // unsigned, in hundredths of a second
+		buffer.putShort(delayTime);
+		final byte colorIndex = (byte) Math.max(transparentIndex, 0);
+		buffer.put(colorIndex);
+		final byte terminator = (byte) 0x00;
+		buffer.put(terminator);
+	}
+
+	private void writeImageData(ByteBuffer buffer, byte[] compressedData) {
+		buffer.put(compressedData);
+	}
+
+	static byte[] compressImageData(int[] uncompressedData) {
+		return compressImageData(uncompressedData, 0, uncompressedData.length);
+	}
+
+	static byte[] compressImageData(int[] uncompressedData, int start, int end) {
+		// compresses the indices from start up to end, as one image
+
+		// single-index strings take the codes 0-255, followed by the two control codes
+		int code = 256;
+		int clearCode = code++;
+		int endOfInformationCode = code++;
+		
+		// the dictionary only ever holds the strings added after the initial codes
+		final int initialCode = code;
+		LZWDictionary dictionary = new LZWDictionary();
+		
+		// LZW algorithm begins
+		LZWImageData packedCodes = new LZWImageData(end - start);
+		int currentCodeLength = 9;
+		int currentCodeLimit = (1 << currentCodeLength) - 1;
+		final int maxCodeLength = 12; // the specification says, "up to 12 bits per code"
+		packedCodes.write(clearCode, currentCodeLength); // send out the first clear code
+		
+		int savedInputCode = uncompressedData[start]; // the code of the longest string matched so far
+		for (int i = start + 1; i < end; i++) {
+			int currentInput = uncompressedData[i];
+			int extendedCode = dictionary.putIfAbsent(savedInputCode, currentInput, code); // add the new string to the dictionary with a new code
+			if (extendedCode >= 0) {
+				savedInputCode = extendedCode;
+			} else {
+				packedCodes.write(savedInputCode, currentCodeLength);
+				savedInputCode = currentInput;
+				if (code++ > currentCodeLimit) {
+					currentCodeLength++;
+					if (currentCodeLength > maxCodeLength) { // code is too long
+						// send out a clear code
+						packedCodes.write(clearCode, currentCodeLength - 1); // send out the first clear code
+						// reset the dictionary
+						dictionary.clear();
+						code = initialCode;
+						currentCodeLength = 9;
+					}
+					currentCodeLimit = (1 << currentCodeLength) - 1;
+				}
+			}
+		}
+		packedCodes.write(savedInputCode, currentCodeLength);
+		packedCodes.write(endOfInformationCode, currentCodeLength);
+		
+		return packedCodes.getData();
+	}
+	
+	private void writeTrailer(ByteBuffer buffer) {
+		buffer.put((byte) 0x3B);
+	}
+
+	private static class EncodedFrame {
+		final ColorTable colorTable;
+		final byte[][] compressedBands; // the LZW compressed image data of each band, including the sub-block framing
+		final int left;
+		final int top;
+		final int width;
+		final int height;
+		final int transparentIndex; // -1 if every pixel is opaque
+		ColorTable palette; // for the following frames to reuse
+		boolean measured = false; // the fields below are only set when measured
+		int frameIndex;
+		long deltaNanos;
+		long quantizeNanos;
+		long compressNanos;
+		long allocatedBytes;
+
+		EncodedFrame(ColorTable colorTable, byte[][] compressedBands, FrameRegion region, int transparentIndex) {
+			this.colorTable = colorTable;
+			this.compressedBands = compressedBands;
+			this.left = region.left;
+			this.top = region.top;
+			this.width = region.width;
+			this.height = region.height;
+			this.transparentIndex = transparentIndex;
+		}
+	}
+
+	private static class PendingFrame {
+		final CompletableFuture<EncodedFrame> encodedFrame;
+		int delayInMilliSeconds; // grows while frames are merged into this one
+
+		PendingFrame(CompletableFuture<EncodedFrame> encodedFrame, int delayInMilliSeconds) {
+			this.encodedFrame = encodedFrame;
+			this.delayInMilliSeconds = delayInMilliSeconds;
+		}
+	}
+
+}
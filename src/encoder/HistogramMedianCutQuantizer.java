@@ -0,0 +1,205 @@
+package encoder;
+
+public class HistogramMedianCutQuantizer implements Quantizer {
+
+	// median cut over a histogram of colors reduced to bitsPerChannel bits per channel,
+	// so the cost depends on the number of distinct colors rather than the number of pixels
+
+	private final int bitsPerChannel;
+	private final int channelMask;
+	private final int numberOfCells;
+	private final int maximumNumberOfColors; // fewer colors compress better
+
+	public HistogramMedianCutQuantizer() {
+		this(5); // RGB555, 32768 cells
+	}
+
+	public HistogramMedianCutQuantizer(int bitsPerChannel) {
+		this(bitsPerChannel, ColorTable.colorTableSize);
+	}
+
+	public HistogramMedianCutQuantizer(int bitsPerChannel, int maximumNumberOfColors) {
+		if (bitsPerChannel < 1 || bitsPerChannel > 6) {
+			throw new IllegalArgumentException("bitsPerChannel must be between 1 and 6: " + bitsPerChannel);
+		}
+		if (maximumNumberOfColors < 2 || maximumNumberOfColors > ColorTable.colorTableSize) {
+			throw new IllegalArgumentException("maximumNumberOfColors must be between 2 and " + ColorTable.colorTableSize + ": " + maximumNumberOfColors);
+		}
+		this.bitsPerChannel = bitsPerChannel;
+		this.maximumNumberOfColors = maximumNumberOfColors;
+		channelMask = (1 << bitsPerChannel) - 1;
+		numberOfCells = 1 << (3 * bitsPerChannel);
+	}
+
+	@Override
+	public ColorTable quantize(byte[] pixels, int width, int height) {
+		int numberOfPixels = width*height;
+
+		// build the histogram, keeping the exact color sums of each cell for the palette
+		final int shift = 8 - bitsPerChannel;
+		int[] cellOfPixel = new int[numberOfPixels];
+		int[] counts = new int[numberOfCells];
+		long[] sums = new long[numberOfCells*3]; // blue, green, red
+		for (int i = 0, offset = 0; i < numberOfPixels; i++, offset += 3) {
+			int blue = pixels[offset] & 0xFF;
+			int green = pixels[offset+1] & 0xFF;
+			int red = pixels[offset+2] & 0xFF;
+			int cell = ((red >> shift) << (2*bitsPerChannel)) | ((green >> shift) << bitsPerChannel) | (blue >> shift);
+			cellOfPixel[i] = cell;
+			counts[cell]++;
+			sums[cell*3] += blue;
+			sums[cell*3+1] += green;
+			sums[cell*3+2] += red;
+		}
+
+		// collect the occupied cells
+		int numberOfOccupiedCells = 0;
+		for (int cell = 0; cell < numberOfCells; cell++) {
+			if (counts[cell] != 0) {
+				numberOfOccupiedCells++;
+			}
+		}
+		int[] cells = new int[numberOfOccupiedCells];
+		for (int cell = 0, k = 0; cell < numberOfCells; cell++) {
+			if (counts[cell] != 0) {
+				cells[k++] = cell;
+			}
+		}
+
+		// split the boxes, each box is a range of cells
+		int[] boxStart = new int[ColorTable.colorTableSize];
+		int[] boxEnd = new int[ColorTable.colorTableSize]; // exclusive
+		int numberOfBoxes = 1;
+		boxStart[0] = 0;
+		boxEnd[0] = numberOfOccupiedCells;
+		int[] boxChannel = new int[ColorTable.colorTableSize]; // the longest side of each box
+		long[] boxPriority = new long[ColorTable.colorTableSize];
+		measureBox(cells, counts, boxStart, boxEnd, boxChannel, boxPriority, 0);
+		int[] scratch = new int[numberOfOccupiedCells];
+		while (numberOfBoxes < maximumNumberOfColors) {
+			// choose the box with the most pixels spread over the longest side
+			int selectedBox = -1;
+			long selectedPriority = 0;
+			for (int box = 0; box < numberOfBoxes; box++) {
+				if (boxPriority[box] > selectedPriority) {
+					selectedBox = box;
+					selectedPriority = boxPriority[box];
+				}
+			}
+			if (selectedBox < 0) { // fewer distinct cells than palette entries
+				break;
+			}
+
+			// split at the median pixel along the longest side
+			int start = boxStart[selectedBox];
+			int end = boxEnd[selectedBox];
+			sortByChannel(cells, scratch, start, end, boxChannel[selectedBox]);
+			long halfOfPixels = countPixels(cells, counts, start, end) / 2;
+			long accumulatedPixels = 0;
+			int medianIndex = start;
+			while (medianIndex < end - 1 && accumulatedPixels + counts[cells[medianIndex]] <= halfOfPixels) {
+				accumulatedPixels += counts[cells[medianIndex++]];
+			}
+			if (medianIndex == start) {
+				medianIndex++; // both halves must be non-empty
+			}
+			boxEnd[selectedBox] = medianIndex;
+			boxStart[numberOfBoxes] = medianIndex;
+			boxEnd[numberOfBoxes] = end;
+			measureBox(cells, counts, boxStart, boxEnd, boxChannel, boxPriority, selectedBox);
+			measureBox(cells, counts, boxStart, boxEnd, boxChannel, boxPriority, numberOfBoxes);
+			numberOfBoxes++;
+		}
+
+		// fill the table with the average color of each box
+		ColorTableEntry[] table = new ColorTableEntry[ColorTable.colorTableSize];
+		int[] indexOfCell = new int[numberOfCells];
+		for (int box = 0; box < numberOfBoxes; box++) {
+			long population = 0, blueSum = 0, greenSum = 0, redSum = 0;
+			for (int k = boxStart[box]; k < boxEnd[box]; k++) {
+				int cell = cells[k];
+				population += counts[cell];
+				blueSum += sums[cell*3];
+				greenSum += sums[cell*3+1];
+				redSum += sums[cell*3+2];
+				indexOfCell[cell] = box;
+			}
+			if (population == 0) { // only happens for an empty image
+				continue;
+			}
+			table[box] = new ColorTableEntry(
+					(byte) ((redSum + population/2) / population),
+					(byte) ((greenSum + population/2) / population),
+					(byte) ((blueSum + population/2) / population));
+		}
+
+		// map every pixel through its cell
+		int[] imageIndices = new int[numberOfPixels];
+		for (int i = 0; i < numberOfPixels; i++) {
+			imageIndices[i] = indexOfCell[cellOfPixel[i]];
+		}
+
+		return new ColorTable(table, imageIndices);
+	}
+
+	private void measureBox(int[] cells, int[] counts, int[] boxStart, int[] boxEnd, int[] boxChannel, long[] boxPriority, int box) {
+		if (boxEnd[box] - boxStart[box] < 2) { // a single cell cannot be split
+			boxPriority[box] = 0;
+			return;
+		}
+		boxChannel[box] = findTheLongestSide(cells, boxStart[box], boxEnd[box]);
+		boxPriority[box] = countPixels(cells, counts, boxStart[box], boxEnd[box]) * sideLength(cells, boxStart[box], boxEnd[box], boxChannel[box]);
+	}
+
+	private int channelOf(int cell, int channel) {
+		// channel 0 is blue, 1 is green, 2 is red
+		return (cell >> (channel*bitsPerChannel)) & channelMask;
+	}
+
+	private int sideLength(int[] cells, int start, int end, int channel) {
+		int min = channelMask, max = 0;
+		for (int k = start; k < end; k++) {
+			int value = channelOf(cells[k], channel);
+			min = Math.min(min, value);
+			max = Math.max(max, value);
+		}
+		return max - min + 1;
+	}
+
+	private int findTheLongestSide(int[] cells, int start, int end) {
+		int longestChannel = 0;
+		int longestLength = 0;
+		for (int channel = 0; channel < 3; channel++) {
+			int length = sideLength(cells, start, end, channel);
+			if (length > longestLength) {
+				longestChannel = channel;
+				longestLength = length;
+			}
+		}
+		return longestChannel;
+	}
+
+	private long countPixels(int[] cells, int[] counts, int start, int end) {
+		long population = 0;
+		for (int k = start; k < end; k++) {
+			population += counts[cells[k]];
+		}
+		return population;
+	}
+
+	private void sortByChannel(int[] cells, int[] scratch, int start, int end, int channel) {
+		// counting sort, there are only 1 << bitsPerChannel distinct keys
+		int[] offsets = new int[channelMask + 2];
+		for (int k = start; k < end; k++) {
+			offsets[channelOf(cells[k], channel) + 1]++;
+		}
+		for (int value = 0; value <= channelMask; value++) {
+			offsets[value + 1] += offsets[value];
+		}
+		for (int k = start; k < end; k++) {
+			scratch[start + offsets[channelOf(cells[k], channel)]++] = cells[k];
+		}
+		System.arraycopy(scratch, start, cells, start, end - start);
+	}
+
+}
@@ -0,0 +1,84 @@
+package encoder;
+
+public class InverseColorMap {
+	
+	// a lookup table from every RGB555 color to the nearest entry of a color table,
+	// so any image can be mapped onto the table with one lookup per pixel
+	
+	final int bitsPerChannel = 5;
+	final int shift = 8 - bitsPerChannel;
+	
+	private final short[] indexOfCell = new short[1 << (3*bitsPerChannel)]; // the nearest entry plus one, 0 until a pixel falls in the cell
+	private final int numberOfEntries;
+	private final int[] entryIndices;
+	private final int[] entryBlues;
+	private final int[] entryGreens;
+	private final int[] entryReds;
+	
+	public InverseColorMap(ColorTableEntry[] table) {
+		// gather the used entries once, the cells are filled as pixels fall in them,
+		// so mapping a small region onto a new table does not pay for all 32768 cells
+		int numberOfEntries = 0;
+		entryIndices = new int[table.length];
+		entryBlues = new int[table.length];
+		entryGreens = new int[table.length];
+		entryReds = new int[table.length];
+		for (int i = 0; i < table.length; i++) {
+			if (table[i] != null) {
+				entryIndices[numberOfEntries] = i;
+				entryBlues[numberOfEntries] = table[i].blue & 0xFF;
+				entryGreens[numberOfEntries] = table[i].green & 0xFF;
+				entryReds[numberOfEntries] = table[i].red & 0xFF;
+				numberOfEntries++;
+			}
+		}
+		this.numberOfEntries = numberOfEntries;
+	}
+	
+	public int map(int blue, int green, int red) {
+		int cell = ((red >> shift) << (2*bitsPerChannel)) | ((green >> shift) << bitsPerChannel) | (blue >> shift);
+		int index = indexOfCell[cell];
+		if (index == 0) { // threads filling the same cell at once write the same value
+			index = findNearestEntry(cell) + 1;
+			indexOfCell[cell] = (short) index;
+		}
+		return index - 1;
+	}
+	
+	private int findNearestEntry(int cell) {
+		// the nearest entry to the center of the cell
+		final int halfCell = 1 << (shift - 1);
+		final int cellMask = (1 << bitsPerChannel) - 1;
+		int redCenter = ((cell >> (2*bitsPerChannel)) << shift) + halfCell;
+		int greenCenter = (((cell >> bitsPerChannel) & cellMask) << shift) + halfCell;
+		int blueCenter = ((cell & cellMask) << shift) + halfCell;
+		int nearestIndex = 0;
+		int nearestDistance = Integer.MAX_VALUE;
+		for (int k = 0; k < numberOfEntries; k++) {
+			int redDifference = redCenter - entryReds[k];
+			int distance = redDifference*redDifference;
+			if (distance >= nearestDistance) {
+				continue;
+			}
+			int greenDifference = greenCenter - entryGreens[k];
+			distance += greenDifference*greenDifference;
+			if (distance >= nearestDistance) {
+				continue;
+			}
+			int blueDifference = blueCenter - entryBlues[k];
+			distance += blueDifference*blueDifference;
+			if (distance < nearestDistance) {
+				nearestIndex = entryIndices[k];
+				nearestDistance = distance;
+			}
+		}
+		return nearestIndex;
+	}
+	
+	public void map(byte[] pixels, int[] imageIndices) {
+		// pixels are packed BGR, one index is written per pixel
+		for (int i = 0, offset = 0; i < imageIndices.length; i++, offset += 3) {
+			imageIndices[i] = map(pixels[offset] & 0xFF, pixels[offset+1] & 0xFF, pixels[offset+2] & 0xFF);
+		}
+	}
+}
@@ -0,0 +1,41 @@
+package encoder;
+
+import java.util.Arrays;
+
+public class LZWDictionary {
+
+	// a string in the dictionary is always (the code of its prefix, its last index),
+	// so the whole table fits in two flat arrays and lookups never allocate
+	final int capacityBits = 13; // 8192 slots for at most 4096 codes, load factor stays below 0.5
+	final int capacity = 1 << capacityBits;
+	final int mask = capacity - 1;
+	final int emptySlot = -1;
+
+	private int[] keys = new int[capacity];
+	private int[] codes = new int[capacity];
+
+	public LZWDictionary() {
+		clear();
+	}
+
+	public void clear() {
+		// single-index strings are implicit (their code is the index itself), so nothing else to restore
+		Arrays.fill(keys, emptySlot);
+	}
+
+	public int putIfAbsent(int prefixCode, int index, int code) {
+		// returns the code of (prefixCode, index) if it is already in the dictionary,
+		// otherwise adds it with the given code and returns -1
+		int key = (prefixCode << 8) | index;
+		int slot = (key * 0x9E3779B1) >>> (32 - capacityBits);
+		while (keys[slot] != emptySlot) {
+			if (keys[slot] == key) {
+				return codes[slot];
+			}
+			slot = (slot + 1) & mask; // linear probing
+		}
+		keys[slot] = key;
+		codes[slot] = code;
+		return -1;
+	}
+}
@@ -1,70 +1,74 @@
 package encoder;
 
 public class LZWImageData {
-	
-	byte[] buffer;
+
+	byte[] buffer; // packed codes, without the sub-block framing
 	int currentByteIndex;
-	int savedBlockSizeIndex;
-	int currentBlockLength;
-	int availableBitsInCurrentByte;
+	long bitAccumulator; // pending bits, the oldest bit is the lowest one
+	int bitsInAccumulator;
 	final int minimumCodeLength = 8;
-	final int maxBlockLength = 256; // according to the GIF specification
-	
-	public LZWImageData(int maxLength) {
-		buffer = new byte[maxLength];
+	final int maxCodeLength = 12; // the specification says, "up to 12 bits per code"
+	final int maxBlockLength = 255; // data bytes per sub-block, according to the GIF specification
+
+	public LZWImageData(int numberOfPixels) {
+		buffer = new byte[computeMaximumLength(numberOfPixels)];
 		currentByteIndex = 0;
+		bitAccumulator = 0;
+		bitsInAccumulator = 0;
+	}
 
-		// add initial LZW code size (8)
-		buffer[currentByteIndex++] = (byte)minimumCodeLength;
-		
-		// create the first sub-block
-		savedBlockSizeIndex = currentByteIndex++; // fill the sub-block size record later when this sub-block terminates
-		currentBlockLength = 1; // 1 byte for the size record
-		availableBitsInCurrentByte = 8; // how many bits in packBuffer[currentByteIndex] are available
-		
+	private int computeMaximumLength(int numberOfPixels) {
+		// every code except the control codes consumes at least one pixel,
+		// a clear code is sent at most once per 4096-258 new codes,
+		// and no code is longer than 12 bits
+		final long maximumNumberOfCodes = numberOfPixels + numberOfPixels / (4096 - 258) + 3;
+		final long maximumNumberOfBits = maximumNumberOfCodes * maxCodeLength;
+		return (int) ((maximumNumberOfBits + 7) / 8) + 4; // 4 bytes of slack for the word-sized flush
 	}
-	
+
 	public void write(int code, int numberOfBits) {
-		// construct the bit pattern of code
-		int currentCodeLength = 0;
-		while (currentCodeLength < numberOfBits) {
-			// output bit by bit
-			int theLastBit = code & 0x1; // take the last bit
-			buffer[currentByteIndex] |= (theLastBit << (8 - availableBitsInCurrentByte));
-			availableBitsInCurrentByte--;
-			if (availableBitsInCurrentByte == 0) { // packBuffer[currentByteIndex] is exhausted
-				// start a new byte
-				currentByteIndex++;
-				availableBitsInCurrentByte = 8;
-				currentBlockLength++;
-				if (currentBlockLength == maxBlockLength) { // the current sub-block is exhausted
-					buffer[savedBlockSizeIndex] = (byte) (maxBlockLength - 1); // fill the sub-block size record
-					// start a new block
-					savedBlockSizeIndex = currentByteIndex++;
-					currentBlockLength = 1;
-				}
-			}
-			currentCodeLength++;
-			code >>= 1; 
+		// append the code above the pending bits
+		bitAccumulator |= ((long) (code & ((1 << numberOfBits) - 1))) << bitsInAccumulator;
+		bitsInAccumulator += numberOfBits;
+		if (bitsInAccumulator >= 32) { // flush a whole word at once
+			buffer[currentByteIndex] = (byte) bitAccumulator;
+			buffer[currentByteIndex+1] = (byte) (bitAccumulator >>> 8);
+			buffer[currentByteIndex+2] = (byte) (bitAccumulator >>> 16);
+			buffer[currentByteIndex+3] = (byte) (bitAccumulator >>> 24);
+			currentByteIndex += 4;
+			bitAccumulator >>>= 32;
+			bitsInAccumulator -= 32;
 		}
 	}
-	
+
 	public byte[] getData() {
-		if (currentBlockLength != 1) { // clean-up work for the last block is needed
-			if (availableBitsInCurrentByte != 8) { // terminate the last half-filled byte
-				currentByteIndex++;
-				currentBlockLength++;
-			}
-			buffer[savedBlockSizeIndex] = (byte) (currentBlockLength - 1); // fill the sub-block size record
+		// flush the remaining bits, terminating the last half-filled byte
+		while (bitsInAccumulator > 0) {
+			buffer[currentByteIndex++] = (byte) bitAccumulator;
+			bitAccumulator >>>= 8;
+			bitsInAccumulator -= 8;
 		}
-		
+		bitAccumulator = 0;
+		bitsInAccumulator = 0;
+
+		// split the packed codes into sub-blocks
+		int numberOfBlocks = (currentByteIndex + maxBlockLength - 1) / maxBlockLength;
+		byte[] data = new byte[1 + numberOfBlocks + currentByteIndex + 1];
+		int dataIndex = 0;
+
+		// add initial LZW code size (8)
+		data[dataIndex++] = (byte) minimumCodeLength;
+
+		for (int blockStart = 0; blockStart < currentByteIndex; blockStart += maxBlockLength) {
+			int blockLength = Math.min(maxBlockLength, currentByteIndex - blockStart);
+			data[dataIndex++] = (byte) blockLength; // the sub-block size record
+			System.arraycopy(buffer, blockStart, data, dataIndex, blockLength);
+			dataIndex += blockLength;
+		}
+
 		// add block Terminator (0)
-		buffer[currentByteIndex++] = (byte) 0x0;
-		
-		// shrink the length
-		byte[] shrinkedBuffer = new byte[currentByteIndex];
-		System.arraycopy(buffer, 0, shrinkedBuffer, 0, currentByteIndex);
-		
-		return shrinkedBuffer;
+		data[dataIndex++] = (byte) 0x0;
+
+		return data;
 	}
 }
@@ -0,0 +1,36 @@
+package encoder;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+public class MatFrame implements RasterFrame {
+	
+	// an OpenCV image, the only kind of frame that needs the OpenCV natives
+	
+	private final Mat image;
+	
+	public MatFrame(Mat image) {
+		if (image.type() != CvType.CV_8UC3) {
+			throw new IllegalArgumentException("Only 8-bit BGR images can be encoded, got " + CvType.typeToString(image.type()));
+		}
+		this.image = image;
+	}
+	
+	@Override
+	public int getWidth() {
+		return image.cols();
+	}
+	
+	@Override
+	public int getHeight() {
+		return image.rows();
+	}
+	
+	@Override
+	public byte[] getBGRPixels() {
+		// one bulk copy instead of a native call per pixel
+		byte[] pixels = new byte[image.rows()*image.cols()*3];
+		image.get(0, 0, pixels);
+		return pixels;
+	}
+}
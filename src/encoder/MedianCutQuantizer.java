@@ -0,0 +1,202 @@
+package encoder;
+
+
+public class MedianCutQuantizer implements Quantizer {
+
+	final int blueIndex = 0;
+	final int greenIndex = 1;
+	final int redIndex = 2;
+	
+	@Override
+	public ColorTable quantize(byte[] pixels, int width, int height) {
+		// sort the positions of the pixels rather than the pixels themselves
+		int[] order = new int[width*height];
+		for (int index = 0; index < order.length; index++) {
+			order[index] = index;
+		}
+		int[] imageIndices = new int[width*height];
+		ColorTableEntry[] table = new ColorTableEntry[ColorTable.colorTableSize];
+		computeMedians(pixels, order, imageIndices, table, 0, 1, 0, order.length-1);
+		return new ColorTable(table, imageIndices);
+	}
+	
+	private void computeMedians(byte[] pixels, int[] order, int[] imageIndices, ColorTableEntry[] table, int numberOfAssignedBits, int medianNodeIndex, int dataStart, int dataEnd) {
+		// construct the color table using the median cut algorithm
+		
+		// sort
+		int colorIndex = findTheMostScatteredColor(pixels, order, dataStart, dataEnd);
+		quicksort(pixels, order, dataStart, dataEnd, colorIndex);
+		
+		// assign new median
+		int medianIndex = (dataStart+dataEnd)/2;
+		int medianValue = valueAt(pixels, order, medianIndex, colorIndex);
+		while (++medianIndex <= dataEnd && valueAt(pixels, order, medianIndex, colorIndex) == medianValue);
+		medianIndex = medianIndex - 1;
+		if (medianIndex == dataEnd) {
+			// the run of the median value reaches the end, so split before the run instead,
+			// otherwise the upper half stays empty and the colors below the median are never separated
+			int runStart = (dataStart+dataEnd)/2;
+			while (runStart > dataStart && valueAt(pixels, order, runStart-1, colorIndex) == medianValue) {
+				runStart--;
+			}
+			if (runStart > dataStart) { // a box of one value keeps everything in the lower half
+				medianIndex = runStart - 1;
+			}
+		}
+		
+		// compute the next bit
+		if (numberOfAssignedBits < 7) {
+			computeMedians(pixels, order, imageIndices, table, numberOfAssignedBits+1, medianNodeIndex*2, dataStart, medianIndex);
+			computeMedians(pixels, order, imageIndices, table, numberOfAssignedBits+1, medianNodeIndex*2+1, medianIndex+1, dataEnd);
+		} else {
+			// fill the table
+			
+			int path = medianNodeIndex & 0x7F;
+			
+			for (int i = dataStart; i <= medianIndex; i++) {
+				imageIndices[order[i]] = path*2;
+			}
+			for (int i = medianIndex+1; i <= dataEnd; i++) {
+				imageIndices[order[i]] = path*2+1;
+			}
+			
+			
+			int greenSmall, greenLarge, redSmall, redLarge, blueSmall, blueLarge;
+			
+			if (colorIndex == greenIndex) {
+				greenSmall = valueAt(pixels, order, (dataStart+medianIndex)/2, greenIndex);
+				greenLarge = valueAt(pixels, order, (medianIndex+1+dataEnd)/2, greenIndex);
+				
+				// compute red
+				quicksort(pixels, order, dataStart, medianIndex, redIndex);
+				quicksort(pixels, order, medianIndex+1, dataEnd, redIndex);
+				redSmall = valueAt(pixels, order, (dataStart+medianIndex)/2, redIndex);
+				redLarge = valueAt(pixels, order, (medianIndex+1+dataEnd)/2, redIndex);
+				
+				// compute blue
+				quicksort(pixels, order, dataStart, medianIndex, blueIndex);
+				quicksort(pixels, order, medianIndex+1, dataEnd, blueIndex);
+				blueSmall = valueAt(pixels, order, (dataStart+medianIndex)/2, blueIndex);
+				blueLarge = valueAt(pixels, order, (medianIndex+1+dataEnd)/2, blueIndex);
+			} else if (colorIndex == blueIndex) {
+				blueSmall = valueAt(pixels, order, (dataStart+medianIndex)/2, blueIndex);
+				blueLarge = valueAt(pixels, order, (medianIndex+1+dataEnd)/2, blueIndex);
+				
+				// compute green
+				quicksort(pixels, order, dataStart, medianIndex, greenIndex);
+				quicksort(pixels, order, medianIndex+1, dataEnd, greenIndex);
+				greenSmall = valueAt(pixels, order, (dataStart+medianIndex)/2, greenIndex);
+				greenLarge = valueAt(pixels, order, (medianIndex+1+dataEnd)/2, greenIndex);
+				
+				// compute red
+				quicksort(pixels, order, dataStart, medianIndex, redIndex);
+				quicksort(pixels, order, medianIndex+1, dataEnd, redIndex);
+				redSmall = valueAt(pixels, order, (dataStart+medianIndex)/2, redIndex);
+				redLarge = valueAt(pixels, order, (medianIndex+1+dataEnd)/2, redIndex);
+				
+			} else {
+				redSmall = valueAt(pixels, order, (dataStart+medianIndex)/2, redIndex);
+				redLarge = valueAt(pixels, order, (medianIndex+1+dataEnd)/2, redIndex);
+				
+				// compute green
+				quicksort(pixels, order, dataStart, medianIndex, greenIndex);
+				quicksort(pixels, order, medianIndex+1, dataEnd, greenIndex);
+				greenSmall = valueAt(pixels, order, (dataStart+medianIndex)/2, greenIndex);
+				greenLarge = valueAt(pixels, order, (medianIndex+1+dataEnd)/2, greenIndex);
+				
+				// compute blue
+				quicksort(pixels, order, dataStart, medianIndex, blueIndex);
+				quicksort(pixels, order, medianIndex+1, dataEnd, blueIndex);
+				blueSmall = valueAt(pixels, order, (dataStart+medianIndex)/2, blueIndex);
+				blueLarge = valueAt(pixels, order, (medianIndex+1+dataEnd)/2, blueIndex);
+			}
+			
+			
+			table[path*2] = new ColorTableEntry((byte)redSmall, (byte)greenSmall, (byte)blueSmall);
+			table[path*2+1] = new ColorTableEntry((byte)redLarge, (byte)greenLarge, (byte)blueLarge);
+				
+		}
+	}
+	
+	private int valueAt(byte[] pixels, int[] order, int index, int colorIndex) {
+		return pixels[order[index]*3 + colorIndex] & 0xFF;
+	}
+	
+	private int findTheMostScatteredColor(byte[] pixels, int[] order, int dataStart, int dataEnd) {
+		if (dataStart <= dataEnd) {
+			int[] blueBins = new int[256];
+			int[] greenBins = new int[256];
+			int[] redBins = new int[256];
+			for (int i = dataStart; i <= dataEnd; i++) {
+				blueBins[valueAt(pixels, order, i, blueIndex)]++;
+				greenBins[valueAt(pixels, order, i, greenIndex)]++;
+				redBins[valueAt(pixels, order, i, redIndex)]++;
+			}
+			
+			// compute the averages
+			long blueSum = 0;
+			long greenSum = 0;
+			long redSum = 0;
+			for (int i = 1; i < 256; i++) { // ignore i=0, no contribution to the sum
+				blueSum += blueBins[i] * i;
+				greenSum += greenBins[i] * i;
+				redSum += redBins[i] * i;
+			}
+			int blueAverage = (int) (blueSum / (dataEnd-dataStart+1));
+			int greenAverage = (int) (greenSum / (dataEnd-dataStart+1));
+			int redAverage = (int) (redSum / (dataEnd-dataStart+1));
+			
+			// compute the variance
+			long blueVariance = 0;
+			long greenVariance = 0;
+			long redVariance = 0;
+			for (int i = 0; i < 256; i++) {
+				blueVariance += blueBins[i] * Math.abs(i - blueAverage);
+				greenVariance += greenBins[i] * Math.abs(i - greenAverage);
+				redVariance += redBins[i] * Math.abs(i - redAverage);
+			}
+			
+			if (blueVariance >= greenVariance && blueVariance >= redVariance) {
+				return blueIndex;
+			} else if (greenVariance >= blueVariance && greenVariance >= redVariance) {
+				return greenIndex;
+			} else {
+				return redIndex;
+			}
+		} 
+		
+		return blueIndex;
+		
+		
+	}
+	
+	private void quicksort(byte[] pixels, int[] order, int low, int high, int colorIndex) {
+		if (low < high) {
+	        int i = low, j = high;
+	        int pivot = valueAt(pixels, order, low + (high-low)/2, colorIndex);
+
+	        while (i <= j) {
+	            while (valueAt(pixels, order, i, colorIndex) < pivot) {
+	                i++;
+	            }
+	            while (valueAt(pixels, order, j, colorIndex) > pivot) {
+	                j--;
+	            }
+	            if (i <= j) {
+	                int temp = order[i];
+	                order[i] = order[j];
+	                order[j] = temp;
+	                i++;
+	                j--;
+	            }
+	        }
+	        if (low < j) {
+	            quicksort(pixels, order, low, j, colorIndex);
+	        }
+	        if (i < high) {
+	            quicksort(pixels, order, i, high, colorIndex);
+	        }
+		}
+	}
+	
+}
@@ -0,0 +1,23 @@
+package encoder;
+
+public enum QuantizationTier {
+	
+	FAST(4), // median cut over an RGB444 histogram
+	BALANCED(5), // median cut over an RGB555 histogram
+	FINE(6); // median cut over an RGB666 histogram
+	
+	private final int bitsPerChannel;
+	
+	private QuantizationTier(int bitsPerChannel) {
+		this.bitsPerChannel = bitsPerChannel;
+	}
+	
+	public Quantizer createQuantizer() {
+		return new HistogramMedianCutQuantizer(bitsPerChannel);
+	}
+	
+	public Quantizer createQuantizer(int maximumNumberOfColors) {
+		// fewer colors than a color table holds, to make the frames smaller
+		return new HistogramMedianCutQuantizer(bitsPerChannel, maximumNumberOfColors);
+	}
+}
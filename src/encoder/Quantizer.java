@@ -0,0 +1,46 @@
+package encoder;
+
+import org.opencv.core.Mat;
+
+public interface Quantizer {
+	
+	// reduce a packed BGR image to at most 256 colors, and map every pixel to one of them
+	ColorTable quantize(byte[] pixels, int width, int height);
+	
+	default ColorTable quantize(RasterFrame frame) {
+		return quantize(frame.getBGRPixels(), frame.getWidth(), frame.getHeight());
+	}
+	
+	default ColorTable quantize(RasterFrame[] frames) {
+		// quantize several frames of the same width together, as if they were stacked vertically
+		int width = frames[0].getWidth();
+		int height = 0;
+		for (RasterFrame frame : frames) {
+			if (frame.getWidth() != width) {
+				throw new IllegalArgumentException("The images must have the same width");
+			}
+			height += frame.getHeight();
+		}
+		byte[] pixels = new byte[width*height*3];
+		int offset = 0;
+		for (RasterFrame frame : frames) {
+			byte[] framePixels = frame.getBGRPixels();
+			System.arraycopy(framePixels, 0, pixels, offset, frame.getWidth()*frame.getHeight()*3);
+			offset += frame.getWidth()*frame.getHeight()*3;
+		}
+		return quantize(pixels, width, height);
+	}
+	
+	default ColorTable quantize(Mat image) {
+		return quantize(new MatFrame(image));
+	}
+	
+	default ColorTable quantize(Mat[] images) {
+		RasterFrame[] frames = new RasterFrame[images.length];
+		for (int i = 0; i < images.length; i++) {
+			frames[i] = new MatFrame(images[i]);
+		}
+		return quantize(frames);
+	}
+	
+}
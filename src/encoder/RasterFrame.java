@@ -0,0 +1,20 @@
+package encoder;
+
+public interface RasterFrame {
+	
+	// an image to be encoded, whatever holds its pixels, so the encoder itself does not need OpenCV
+	
+	enum PixelOrder {
+		BGR, // blue first, like OpenCV and BufferedImage.TYPE_3BYTE_BGR
+		RGB
+	}
+	
+	int getWidth();
+	
+	int getHeight();
+	
+	// the pixels as packed BGR, width*height*3 bytes, which may be the frame's own array rather than a copy,
+	// so they must not be modified while the encoder still uses them
+	byte[] getBGRPixels();
+	
+}
@@ -0,0 +1,68 @@
+package encoder;
+
+public class SizeEstimator {
+
+	// estimates how many bytes GIFStreamEncoder writes for a frame, without encoding the whole frame:
+	// a few bands of rows are quantized over a coarse histogram and compressed, and the result is scaled up to the full height
+
+	private final int sampleBandHeight = 32; // in rows, tall enough for LZW to build up its dictionary
+	private final int numberOfSampleBands = 3;
+	private final int frameOverhead = 8 + 10 + ColorTable.colorTableSize*3; // graphics control extension, image descriptor and local color table
+
+	private final int deltaTolerance; // negative without delta encoding
+
+	public SizeEstimator(int deltaTolerance) {
+		// deltaTolerance as given to GIFStreamEncoder.setDeltaEncoding, negative if delta encoding is disabled
+		this.deltaTolerance = deltaTolerance;
+	}
+
+	public long estimateFrameSize(RasterFrame frame, RasterFrame previousFrame, int numberOfColors) {
+		// previousFrame is the frame on the screen before this one, null if this one is written in full
+		FrameRegion region;
+		if (previousFrame != null && deltaTolerance >= 0) {
+			DeltaFrameOptimizer deltaFrameOptimizer = new DeltaFrameOptimizer(deltaTolerance);
+			deltaFrameOptimizer.optimize(previousFrame.getBGRPixels(), previousFrame.getWidth(), previousFrame.getHeight());
+			region = deltaFrameOptimizer.optimize(frame.getBGRPixels(), frame.getWidth(), frame.getHeight());
+		} else {
+			region = new FrameRegion(0, 0, frame.getWidth(), frame.getHeight(), frame.getBGRPixels(), null);
+		}
+
+		// evenly spaced bands of rows, or all of them in a low region
+		int sampledRows = Math.min(region.height, sampleBandHeight*numberOfSampleBands);
+		int numberOfBands = (sampledRows + sampleBandHeight - 1) / sampleBandHeight;
+		byte[] pixels = new byte[region.width*sampledRows*3];
+		boolean[] opaque = new boolean[region.width*sampledRows];
+		int numberOfOpaquePixels = 0;
+		for (int band = 0, row = 0; band < numberOfBands; band++) {
+			int firstRow = sampledRows == region.height ? band*sampleBandHeight : band*region.height/numberOfBands;
+			for (int y = firstRow; y < firstRow + sampleBandHeight && row < sampledRows; y++, row++) {
+				System.arraycopy(region.pixels, y*region.width*3, pixels, row*region.width*3, region.width*3);
+				for (int x = 0; x < region.width; x++) {
+					int index = row*region.width + x;
+					opaque[index] = region.opaque == null || region.opaque[y*region.width + x];
+					if (opaque[index]) {
+						System.arraycopy(pixels, index*3, pixels, numberOfOpaquePixels*3, 3); // packed in front, behind the read position
+						numberOfOpaquePixels++;
+					}
+				}
+			}
+		}
+
+		// the transparent pixels take an index of their own, like in the encoder
+		int[] indices = new int[opaque.length];
+		if (numberOfOpaquePixels > 0) {
+			int[] opaqueIndices = new HistogramMedianCutQuantizer(4, numberOfColors).quantize(pixels, numberOfOpaquePixels, 1).getImageIndices();
+			for (int i = 0, k = 0; i < indices.length; i++) {
+				indices[i] = opaque[i] ? opaqueIndices[k++] : numberOfColors - 1;
+			}
+		}
+		long compressedBytes = GIFStreamEncoder.compressImageData(indices).length;
+		return frameOverhead + compressedBytes*region.height/sampledRows;
+	}
+
+	public static long estimateSize(long firstFrameSize, long followingFrameSize, int numberOfFrames) {
+		// the whole file, given the size of the first frame and the average size of the others
+		final int headerAndTrailer = 6 + 7 + 1;
+		return headerAndTrailer + firstFrameSize + followingFrameSize*Math.max(0, numberOfFrames - 1);
+	}
+}
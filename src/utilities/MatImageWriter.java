@@ -0,0 +1,112 @@
+package utilities;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+import javafx.application.Platform;
+import javafx.beans.property.ObjectProperty;
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+
+/**
+ * Show a stream of Mat objects (OpenCV) through one reusable WritableImage (JavaFX).
+ * Unlike {@link Utilities#mat2Image(Mat)}, no AWT image and no JavaFX image are created per frame:
+ * the pixels are converted to the native format of JavaFX in OpenCV, copied into a pooled buffer,
+ * and written into the image through its PixelWriter on the JavaFX thread.
+ * When the JavaFX thread falls behind, frames that were never shown are dropped.
+ */
+public class MatImageWriter
+{
+	private final ObjectProperty<Image> property;
+	private final Mat convertedFrame = new Mat();
+	private final ConcurrentLinkedQueue<byte[]> freeBuffers = new ConcurrentLinkedQueue<byte[]>(); // at most three: shown, pending and being filled
+	private final AtomicReference<PendingFrame> pendingFrame = new AtomicReference<PendingFrame>();
+	private final AtomicBoolean updateScheduled = new AtomicBoolean(false);
+	private WritableImage image; // only touched on the JavaFX thread
+
+	/**
+	 * @param property
+	 *            the image property to show the frames in, e.g. of an ImageView
+	 */
+	public MatImageWriter(ObjectProperty<Image> property)
+	{
+		this.property = property;
+	}
+
+	/**
+	 * Show a frame, may be called on any thread
+	 *
+	 * @param frame
+	 *            the {@link Mat} in BGR, it may be reused as soon as this returns
+	 */
+	public void write(Mat frame)
+	{
+		int width = frame.cols(), height = frame.rows();
+		byte[] buffer = acquireBuffer(width * height * 4);
+		synchronized (convertedFrame)
+		{
+			// BGRA is what a WritableImage stores, so setPixels does not convert again
+			Imgproc.cvtColor(frame, convertedFrame, frame.channels() > 1 ? Imgproc.COLOR_BGR2BGRA : Imgproc.COLOR_GRAY2BGRA);
+			convertedFrame.get(0, 0, buffer);
+		}
+
+		PendingFrame replacedFrame = pendingFrame.getAndSet(new PendingFrame(buffer, width, height));
+		if (replacedFrame != null)
+		{
+			freeBuffers.offer(replacedFrame.pixels); // never shown
+		}
+		if (updateScheduled.compareAndSet(false, true))
+		{
+			Platform.runLater(this::update);
+		}
+	}
+
+	private void update()
+	{
+		updateScheduled.set(false);
+		PendingFrame frame = pendingFrame.getAndSet(null);
+		if (frame == null)
+		{
+			return;
+		}
+		if (image == null || (int) image.getWidth() != frame.width || (int) image.getHeight() != frame.height)
+		{
+			image = new WritableImage(frame.width, frame.height);
+		}
+		image.getPixelWriter().setPixels(0, 0, frame.width, frame.height, PixelFormat.getByteBgraPreInstance(), frame.pixels, 0, frame.width * 4);
+		property.set(image); // a no-op unless the image is new
+		freeBuffers.offer(frame.pixels);
+	}
+
+	private byte[] acquireBuffer(int size)
+	{
+		for (byte[] buffer = freeBuffers.poll(); buffer != null; buffer = freeBuffers.poll())
+		{
+			if (buffer.length == size)
+			{
+				return buffer;
+			}
+			// buffers of another frame size are dropped
+		}
+		return new byte[size];
+	}
+
+	private static class PendingFrame
+	{
+		final byte[] pixels;
+		final int width;
+		final int height;
+
+		PendingFrame(byte[] pixels, int width, int height)
+		{
+			this.pixels = pixels;
+			this.width = width;
+			this.height = height;
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package utilities;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.opencv.core.Mat;
+
+/**
+ * Reuse Mat objects (OpenCV) of the same size and type, instead of leaving their native memory
+ * to be freed whenever the garbage collector finalizes them.
+ * Every acquired Mat should be released to the pool when it is no longer needed.
+ */
+public class MatPool
+{
+	private final int maximumFreeMatsPerSize;
+	private final Map<Long, ArrayDeque<Mat>> freeMats = new HashMap<Long, ArrayDeque<Mat>>();
+
+	/**
+	 * @param maximumFreeMatsPerSize
+	 *            how many unused Mats of each size and type are kept, the others are released
+	 */
+	public MatPool(int maximumFreeMatsPerSize)
+	{
+		if (maximumFreeMatsPerSize < 0)
+		{
+			throw new IllegalArgumentException("maximumFreeMatsPerSize must not be negative: " + maximumFreeMatsPerSize);
+		}
+		this.maximumFreeMatsPerSize = maximumFreeMatsPerSize;
+	}
+
+	/**
+	 * Get a Mat of the given size and type, its content is undefined
+	 */
+	public synchronized Mat acquire(int rows, int cols, int type)
+	{
+		ArrayDeque<Mat> mats = freeMats.get(getKey(rows, cols, type));
+		if (mats != null && !mats.isEmpty())
+		{
+			return mats.pop();
+		}
+		return new Mat(rows, cols, type);
+	}
+
+	/**
+	 * Give a Mat back to the pool, it must not be used afterwards.
+	 * Its size and type may have changed since it was acquired.
+	 */
+	public synchronized void release(Mat mat)
+	{
+		if (mat.empty())
+		{
+			mat.release();
+			return;
+		}
+		long key = getKey(mat.rows(), mat.cols(), mat.type());
+		ArrayDeque<Mat> mats = freeMats.get(key);
+		if (mats == null)
+		{
+			mats = new ArrayDeque<Mat>();
+			freeMats.put(key, mats);
+		}
+		if (mats.size() < maximumFreeMatsPerSize)
+		{
+			mats.push(mat);
+		}
+		else
+		{
+			mat.release();
+		}
+	}
+
+	/**
+	 * Release the native memory of all unused Mats
+	 */
+	public synchronized void clear()
+	{
+		for (ArrayDeque<Mat> mats : freeMats.values())
+		{
+			for (Mat mat : mats)
+			{
+				mat.release();
+			}
+		}
+		freeMats.clear();
+	}
+
+	private static long getKey(int rows, int cols, int type)
+	{
+		return ((long) rows << 40) | ((long) cols << 16) | type;
+	}
+}